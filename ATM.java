@@ -1,32 +1,141 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 import java.io.IOException;
-import java.io.FileNotFoundException;
 
-import java.text.DecimalFormat;
-import java.util.Scanner;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 public class ATM {
 
-    /** Stores accounts in an array */
-    private Account[] accounts;
-
-    /** Stores the maximum number of accounts */
-    private int maxAccounts;
+    /** Stores the accounts, by account number (it grows by chunks when every account number is taken, see AccountTable) */
+    private AccountTable accounts;
 
     /** Stores the fileName (String) to read and write from */
     private final String fileName;
 
+    /** Maps each "[name] [lastName]" key to its account number for O(1) lookups (read without locking by concurrent sessions) */
+    private ConcurrentHashMap<String, Integer> nameIndex;
+
+    /** Marks every empty slot of the accounts array */
+    private BitSet freeSlots;
+
+    /** Stores the number of empty slots (cached so hasSpace does not need to scan) */
+    private int freeCount;
+
+    /**
+     * Marks the slots of deleted accounts.
+     * They stay empty but are not free until the next saveAccounts, so a deleted account number is never given
+     * to another account while sessions may still hold it.
+     */
+    private BitSet tombstones;
+
+    /** True if the accounts file is parsed in parallel (see ParallelAccountLoader) */
+    private final boolean parallelLoad;
+
+    /** Stores the journal where every change is appended until the next snapshot (null while replaying it) */
+    private Journal journal;
+
+    /** Stores the ledger where every transaction is kept with its time (null while the journal is replayed) */
+    private Ledger ledger;
+
+    /** Keeps the accounts ordered by balance (null until the journal is replayed) */
+    private BalanceIndex balances;
+
+    /**
+     * Lets changes run concurrently while saveAccounts takes a consistent snapshot.
+     *
+     * Locks are always taken in this order: snapshotLock, the ATM (for changes to the accounts array), an Account, the journal or the ledger.
+     */
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    /** Stores the background thread saving the accounts (null if the accounts are only saved by saveAccounts, see startPersister) */
+    private volatile AccountPersister persister;
+
+    /**
+     * Stores a copy of every account as of the last flush, by account number (null while no persister runs).
+     * A flush only copies the dirty accounts into it under the write lock of snapshotLock, then writes it without holding any lock.
+     */
+    private Account[] saved;
+
+    /** Stores the accounts changed since the last flush (only tracked while a persister runs) */
+    private final Set<Account> dirtyAccounts = ConcurrentHashMap.newKeySet();
+
+    /** Marks the account numbers where an account was added or deleted since the last flush (changed while holding the ATM) */
+    private final BitSet dirtySlots = new BitSet();
+
+    /** Counts the dirty accounts and account numbers, so the persister is woken without counting the set */
+    private final AtomicInteger dirtyCount = new AtomicInteger();
+
+    /** True if an account changed without a journal entry since the last flush (see touch), so only a flush can keep the change */
+    private volatile boolean unjournaled;
+
+    /** Lets one save run at a time (a flush or saveAccounts); it is taken before snapshotLock */
+    private final ReentrantLock persistLock = new ReentrantLock();
+
+    /** Stores the depth of the history of new accounts */
+    private int historyDepth = Account.DEFAULT_DEPTH;
+
+    /** The login attempts per second allowed to every session together, on average (about half of what one core can hash) */
+    private static final double LOGIN_RATE = 1000.0;
+
+    /** The login attempts allowed at once */
+    private static final int LOGIN_BURST = 200;
+
+    /** Limits the PINs hashed for logins, so a flood of attempts cannot take every processor (see LoginRateLimiter) */
+    private volatile LoginRateLimiter loginLimiter = new LoginRateLimiter(LOGIN_RATE, LOGIN_BURST);
+
+    /** Stores the number of journal entries after which the accounts file is rewritten and the journal is reset */
+    private static final int JOURNAL_COMPACTION_ENTRIES = 1000;
+
+    /** The line written in the accounts file for an empty account number, so the accounts after it keep their numbers */
+    private static final String EMPTY_SLOT = "-";
+
+    /** The options of the admin menu */
+    private static final String ADMIN_OPTIONS = "SPNURDE";
+
+    /** The admin menu, built once and printed in one piece */
+    private static final String ADMIN_MENU =
+            "  S et balance\n" +
+            "  P in change\n" +
+            "  N ames change\n" +
+            "  U nblock account\n" +
+            "  R egular menu\n" +
+            "  D elete account\n" +
+            "  E xit\n" +
+            "\n";
+
     /**
      * Constructor for the ATM class.
      * Initializes the ATM object with a default file name "BankAccounts.txt"
      * and retrieves account information from the file.
      */
     public ATM() {
-        this.fileName = "BankAccounts.txt";
-        this.getAccounts();
+        this("BankAccounts.txt");
     }
 
     /**
@@ -37,7 +146,20 @@ public class ATM {
      * and retrieves account information from the file.
      */
     public ATM(String fileName) {
+        this(fileName, false);
+    }
+
+    /**
+     * Constructor for the ATM class with a custom file name and load mode.
+     *
+     * @param fileName the name of the file containing account information
+     * @param parallelLoad true to parse the file in chunks on the fork-join pool, false to read it line by line
+     * Initializes the ATM object with the specified file name
+     * and retrieves account information from the file.
+     */
+    public ATM(String fileName, boolean parallelLoad) {
         this.fileName = fileName;
+        this.parallelLoad = parallelLoad;
         this.getAccounts();
     }
 
@@ -51,71 +173,648 @@ public class ATM {
      *     "AEBank-AccountsFileIsValid-MaxAccounts:"
      *
      * ...followed by account details in each subsequent line.
+     * Line i holds account number i; a line holding only "-" is an empty account number.
+     *
+     * The file is read line by line through a BufferedReader and each line is split by hand (see parseAccount),
+     * which avoids the regex matching that Scanner does on every token.
+     * If 'parallelLoad' is true, ParallelAccountLoader parses the file in chunks instead (same accounts, same order).
+     * If 'fileName' ends with ".bin", the accounts are read from a BinaryAccountStore instead (no parsing at all).
+     * A line that cannot be parsed (e.g. an amount too large for cents) is reported and its account number left empty (see reject).
+     *
+     * Then the changes recorded in the journal ([fileName].journal) since the file was last saved are replayed,
+     * and the ledger ([fileName].ledger) is opened.
+     * Legacy encrypted PINs are then migrated to hashed credentials, and saved if there were any (see migrateCredentials).
+     * Finally the accounts are ordered by balance (see BalanceIndex).
      *
-     * @throws FileNotFoundException if the specified file is not found or is in the wrong format
+     * @throws IOException if the specified file is not found or cannot be read
      *
      * The format of each account line in the file is as follows:
-     * [name] [lastName] [pin] [balance] [transaction1] [transaction2] [transaction3] [transaction4] [transaction5]
+     * [name] [lastName] [pin] [balance] [transaction1] [transaction2] ... [transactionN]
      *
      * [name] is the first name of the account holder
      * [lastName] is the last name of the account holder
-     * [pin] is the encrypted personal identification number of the account holder
+     * [pin] is the credential of the account holder (see Credential; files written before credentials hold the encrypted PIN)
      * [balance] is the current balance of the account
-     * [transaction1] through [transaction5] are the last 5 transactions made on the account
+     * [transaction1] through [transactionN] are the last N transactions made on the account (N is the depth of its history, 5 by default)
      */
     protected void getAccounts() {
 
+        if (binary()) {
+            getAccountsBinary();
+        } else if (parallelLoad) {
+            getAccountsParallel();
+        } else {
+            getAccountsSequential();
+        }
+
+        if (accounts != null) {
+            openJournal();
+            // The replayed transactions were made before this start, so the report does not count them as new ones
+            for (int i = 0; i < accounts.capacity(); i++) {
+                if (accounts.get(i) != null) {accounts.get(i).clearTotals();}
+            }
+            openLedger();
+            migrateCredentials();
+            rankAccounts();
+        }
+
+    }
+
+    /**
+     * Retrieves account information from the file line by line.
+     */
+    private void getAccountsSequential() {
+
         final String HEADLINE = "AEBank-AccountsFileIsValid-MaxAccounts:";
 
         try {
 
             File fd = new File(fileName);
-            Scanner fileReader = new Scanner(fd);
+            BufferedReader fileReader = new BufferedReader(new FileReader(fd), 1 << 16);
 
-            String fileHeadline = fileReader.nextLine();
+            String fileHeadline = fileReader.readLine();
             assert fileHeadline.startsWith(HEADLINE);
 
-            maxAccounts = Integer.parseInt(fileHeadline.substring(HEADLINE.length(), fileHeadline.length()));
-            accounts = new Account[maxAccounts];
-
-            String name;
-            String lastName;
-            int pin;
-            double balance;
-            double[] last5Transactions = new double[5];
+            int maxAccounts = Integer.parseInt(fileHeadline.substring(HEADLINE.length(), fileHeadline.length()).trim());
+            accounts = new AccountTable(maxAccounts);
 
+            String line;
             int i = 0;
 
-            while (i < maxAccounts && fileReader.hasNextLine()) {
+            while (i < maxAccounts && (line = fileReader.readLine()) != null) {
+
+                // Empty account numbers are kept empty
+                if (isEmptySlot(line)) {
+                    i++;
+                    continue;
+                }
+
+                // Blank lines (e.g. a trailing newline) are skipped
+                Account account;
+                try {
+                    account = parseAccount(line);
+                } catch (IllegalArgumentException Invalid) {
+                    reject(Invalid);
+                    i++;
+                    continue;
+                }
+                if (account == null) {continue;}
+
+                accounts.set(i, account);
+
+                i++;
+
+            }
+
+            fileReader.close();
+
+            indexAccounts();
+
+        } catch (IOException e) {
+            System.out.println("Error reading file.");
+            e.printStackTrace();
+        }
+
+    }
+
+    /**
+     * Retrieves account information from the file using ParallelAccountLoader.
+     * Account numbers are the same ones getAccounts gives when reading line by line.
+     */
+    private void getAccountsParallel() {
+
+        try {
+
+            ParallelAccountLoader loader = new ParallelAccountLoader(fileName);
+
+            Account[] loaded = new Account[loader.maxAccounts()];
+            loader.loadInto(loaded);
+            loader.close();
+
+            accounts = AccountTable.of(loaded);
+            indexAccounts();
+
+        } catch (IOException e) {
+            System.out.println("Error reading file.");
+            e.printStackTrace();
+        }
+
+    }
+
+    /**
+     * Retrieves account information from a BinaryAccountStore.
+     * Record i of the store is account number i, so empty slots stay where they were.
+     * Every record is read once and the store is closed; saves create a new store (see saveAccountsBinary).
+     */
+    private void getAccountsBinary() {
+
+        try {
+
+            BinaryAccountStore store = new BinaryAccountStore(fileName);
+
+            accounts = new AccountTable(store.maxAccounts());
+            for (int i = 0; i < store.maxAccounts(); i++) {accounts.set(i, store.read(i));}
+            store.close();
+
+            indexAccounts();
+
+        } catch (IOException e) {
+            System.out.println("Error reading file.");
+            e.printStackTrace();
+        }
+
+    }
+
+    /**
+     * Checks if the accounts are kept in a BinaryAccountStore rather than a text file.
+     *
+     * @return true if 'fileName' ends with BinaryAccountStore.EXTENSION
+     */
+    private boolean binary() {return fileName.endsWith(BinaryAccountStore.EXTENSION);}
+
+    /**
+     * Replays the journal of the accounts file and opens it to record new changes.
+     * While replaying, 'journal' is null so the replayed changes are not recorded again.
+     */
+    private void openJournal() {
+
+        journal = null;
+
+        try {
+
+            Journal replayedJournal = new Journal(fileName + ".journal");
+            replayedJournal.open(this, Journal.checksum(fileName));
+            journal = replayedJournal;
+
+        } catch (IOException e) {
+            System.out.println("Error reading journal.");
+            e.printStackTrace();
+        }
+
+    }
+
+    /**
+     * Opens the ledger of the accounts file.
+     * It is opened after the journal is replayed, since the ledger already holds the replayed transactions.
+     */
+    private void openLedger() {
+
+        try {
+            ledger = new Ledger(fileName + ".ledger");
+        } catch (IOException e) {
+            System.out.println("Error reading ledger.");
+            e.printStackTrace();
+        }
+
+    }
+
+    /**
+     * Replaces the legacy credentials (PINs encrypted with Account.encryptPassword) with hashed ones, then saves the accounts,
+     * so the old values are no longer stored. Files without legacy credentials are not saved, so only the first load
+     * of a legacy file pays for the hashes.
+     *
+     * Each account is hashed with its own salt (see PinVerifier.migrate), so accounts sharing a legacy value do not share a hash;
+     * the accounts are hashed in parallel on the fork-join pool.
+     */
+    private void migrateCredentials() {
+
+        PinVerifier verifier = Account.pinVerifier();
+        int migrated = IntStream.range(0, accounts.capacity()).parallel().map(i -> migrateCredential(verifier, i) ? 1 : 0).sum();
+
+        if (migrated > 0) {saveAccounts();}
+
+    }
+
+    /**
+     * Migrates the credential of one account if it is a legacy one.
+     *
+     * @param verifier the verifier hashing the legacy value
+     * @param i the account number
+     * @return true if the account had a legacy credential
+     */
+    private boolean migrateCredential(PinVerifier verifier, int i) {
+        Account account = accounts.get(i);
+        if (account == null || !account.credential().isLegacy()) {return false;}
+        account.setCredential(verifier.migrate(account.credential()));
+        return true;
+    }
+
+    /**
+     * Builds the balance index once the journal is replayed (replayed changes do not update it).
+     */
+    private void rankAccounts() {
+        BalanceIndex index = new BalanceIndex();
+        for (int i = 0; i < accounts.capacity(); i++) {
+            if (accounts.get(i) != null) {index.add(accounts.get(i));}
+        }
+        balances = index;
+    }
+
+    /**
+     * Retrieves the ledger of the accounts.
+     *
+     * @return the ledger (null if it could not be opened)
+     */
+    protected Ledger ledger() {return ledger;}
+
+    /**
+     * Saves the accounts file once the journal has grown past JOURNAL_COMPACTION_ENTRIES entries.
+     * While a persister runs, it is only woken (also when enough accounts are dirty) and the session goes on right away.
+     * It must not be called while holding snapshotLock (saveAccounts needs its write lock).
+     */
+    private void compactJournal() {
+        AccountPersister current = persister;
+        boolean journalFull = journal != null && journal.entries() >= JOURNAL_COMPACTION_ENTRIES;
+        if (current != null) {
+            if (journalFull || dirtyCount.get() >= current.threshold()) {current.wake();}
+        } else if (journalFull) {
+            saveAccounts();
+        }
+    }
+
+    /**
+     * Starts saving the accounts in the background (see AccountPersister):
+     * changes mark their accounts dirty, and every 'intervalMillis' (or as soon as 'threshold' accounts are dirty) the persister
+     * flushes them if the journal needs it (see flushIfNeeded).
+     * Sessions no longer wait for the accounts file to be rewritten; they are only held up while the dirty accounts are copied.
+     * A copy of every account is kept for the flushes, so the accounts take about twice as much memory while the persister runs.
+     *
+     * @param intervalMillis the time between two checks, in milliseconds
+     * @param threshold the number of dirty accounts after which a flush starts without waiting for the interval
+     * @throws IllegalArgumentException if the interval or the threshold is not positive
+     */
+    protected void startPersister(long intervalMillis, int threshold) {
+
+        AccountPersister started = new AccountPersister(this, intervalMillis, threshold);
+
+        persistLock.lock();
+        try {
+
+            if (persister != null) {return;}
+
+            snapshotLock.writeLock().lock();
+            try {
+                synchronized (this) {
+                    // The first copy is the only one of every account; later flushes only copy the dirty ones
+                    saved = accounts.toArray();
+                    for (int i = 0; i < saved.length; i++) {
+                        if (saved[i] != null) {saved[i] = saved[i].copy();}
+                    }
+                    dirtyAccounts.clear();
+                    dirtySlots.clear();
+                    dirtyCount.set(0);
+                    persister = started;
+                }
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+
+        } finally {
+            persistLock.unlock();
+        }
+
+        started.start();
+
+    }
+
+    /**
+     * Stops the background saving and saves what is still dirty.
+     * Call it before the program ends, instead of saveAccounts.
+     */
+    protected void stopPersister() {
+
+        AccountPersister stopped = persister;
+        if (stopped == null) {
+            saveAccounts();
+            return;
+        }
+
+        try {
+            stopped.stop();
+        } catch (InterruptedException e) {
+            System.out.println("An error occurred.");
+            e.printStackTrace();
+        }
+
+        persistLock.lock();
+        try {
+            flush();
+            snapshotLock.writeLock().lock();
+            try {
+                persister = null;
+                saved = null;
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+        } finally {
+            persistLock.unlock();
+        }
+
+    }
+
+    /**
+     * Marks an account as changed since the last flush.
+     * Called while holding the read lock of snapshotLock, so a flush sees both the change and the mark, or neither.
+     *
+     * @param account the changed account
+     */
+    private void markDirty(Account account) {
+        if (persister != null && dirtyAccounts.add(account)) {dirtyCount.incrementAndGet();}
+    }
+
+    /**
+     * Marks an account number where an account was added or deleted since the last flush.
+     * Called while holding the read lock of snapshotLock and the ATM.
+     *
+     * @param accountNum the account number
+     */
+    private void markDirtySlot(int accountNum) {
+        if (persister != null && !dirtySlots.get(accountNum)) {
+            dirtySlots.set(accountNum);
+            dirtyCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Marks an account changed outside of the journaled changes (a credential upgraded at login) as dirty.
+     *
+     * @param account the changed account
+     */
+    private void touch(Account account) {
+        if (persister == null) {return;}
+        snapshotLock.readLock().lock();
+        try {
+            unjournaled = true;
+            markDirty(account);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        compactJournal();
+    }
+
+    /**
+     * Flushes the dirty accounts if the journal cannot keep them any longer, for the persister (see startPersister).
+     * Every journaled change is already on disk in the journal, so rewriting the whole accounts file for a few dirty accounts
+     * would only cost a write of every account. A flush is only made once the journal has grown past JOURNAL_COMPACTION_ENTRIES entries
+     * (or 'threshold' accounts are dirty), when a change was made outside of the journal (see touch), or when there is no journal.
+     */
+    protected void flushIfNeeded() {
+        AccountPersister current = persister;
+        boolean needed = journal == null || unjournaled || journal.entries() >= JOURNAL_COMPACTION_ENTRIES
+                || (current != null && dirtyCount.get() >= current.threshold());
+        if (needed) {flush();}
+    }
+
+    /**
+     * Writes the accounts changed since the last flush to the accounts file (see flushIfNeeded and stopPersister).
+     *
+     * Only the dirty accounts are copied into 'saved' while holding the write lock of snapshotLock; the number of journal entries
+     * the copy contains is taken at the same time. The file is then written from the copy without holding it, so sessions go on meanwhile:
+     * the new file is written next to the old one, a marker is added to the journal, the file is renamed over the old one,
+     * and the journal is compacted to the entries appended since the copy (see Journal.mark and Journal.compact).
+     * If the ATM stops at any point, the accounts file and the journal still give back every change.
+     * Finally the slots of the accounts deleted before the copy are freed.
+     */
+    protected void flush() {
+
+        persistLock.lock();
+        try {
+
+            if (saved == null) {return;}
+
+            int capacity;
+            int covered;
+            BitSet freed;
+
+            snapshotLock.writeLock().lock();
+            try {
+                synchronized (this) {
+
+                    if (dirtyCount.get() == 0) {return;}
+
+                    capacity = accounts.capacity();
+                    if (saved.length < capacity) {saved = Arrays.copyOf(saved, capacity);}
+
+                    for (int i = dirtySlots.nextSetBit(0); i >= 0; i = dirtySlots.nextSetBit(i + 1)) {
+                        saved[i] = (accounts.get(i) == null) ? null : accounts.get(i).copy();
+                    }
+                    for (Account account : dirtyAccounts) {
+                        int accountNum = accountNumOf(account);
+                        if (accountNum != -1) {saved[accountNum] = account.copy();}
+                    }
+
+                    dirtySlots.clear();
+                    dirtyAccounts.clear();
+                    dirtyCount.set(0);
+                    unjournaled = false;
+
+                    covered = (journal != null) ? journal.lines() : 0;
+                    freed = (BitSet) tombstones.clone();
+
+                }
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+
+            Path target = Paths.get(fileName);
+            long crc;
+
+            if (binary()) {
+                Path next = Paths.get(fileName + ".next");
+                BinaryAccountStore.create(next.toString(), saved, capacity);
+                crc = Journal.checksum(next.toString());
+                if (journal != null) {journal.mark(crc, covered);}
+                replace(next, target);
+            } else {
+                Path tmp = Paths.get(fileName + ".tmp");
+                crc = writeAccounts(tmp, saved, capacity);
+                if (journal != null) {journal.mark(crc, covered);}
+                replace(tmp, target);
+            }
+
+            if (journal != null) {journal.compact(crc, covered);}
+            if (ledger != null) {ledger.checkpoint();}
+
+            // Only the deletions in the saved file free their slots; later ones wait for the next flush
+            synchronized (this) {
+                for (int i = freed.nextSetBit(0); i >= 0; i = freed.nextSetBit(i + 1)) {
+                    tombstones.clear(i);
+                    updateFreeSlot(i);
+                }
+            }
+
+        } catch (IOException e) {
+            System.out.println("An error occurred.");
+            e.printStackTrace();
+        } finally {
+            persistLock.unlock();
+        }
+
+    }
+
+    /**
+     * Finds the account number of an account.
+     * Called while holding the ATM.
+     *
+     * @param account the account
+     * @return the account number (-1 if the account was deleted)
+     */
+    private int accountNumOf(Account account) {
+        int accountNum = account.accountNum();
+        return (accountNum >= 0 && accountNum < accounts.capacity() && accounts.get(accountNum) == account) ? accountNum : -1;
+    }
+
+    /**
+     * Builds the name index and the free slot tracking after the accounts are loaded.
+     */
+    private void indexAccounts() {
+
+        nameIndex = new ConcurrentHashMap<>();
+        freeSlots = new BitSet(accounts.capacity());
+        freeCount = 0;
+        tombstones = new BitSet();
+
+        for (int i = 0; i < accounts.capacity(); i++) {
+            Account account = accounts.get(i);
+            if (account != null) {
+                account.setAccountNum(i);
+                indexName(account.name(), account.lastName(), i);
+            } else {
+                freeSlots.set(i);
+                freeCount++;
+            }
+        }
+
+    }
+
+    /**
+     * Reports an account line the loaders could not parse.
+     * The load goes on without it: its account number is left empty, so the accounts after it keep their numbers.
+     * The account is not in the next save, so the line has to be corrected in the file before then.
+     *
+     * @param invalid the error thrown by parseAccount
+     */
+    protected static void reject(IllegalArgumentException invalid) {
+        System.out.println("Account line rejected (its account number is left empty): " + invalid.getMessage());
+    }
+
+    /**
+     * Checks if a line of the accounts file is the line of an empty account number (see EMPTY_SLOT).
+     *
+     * @param line a line of the accounts file
+     * @return true if the account number of the line is empty
+     */
+    protected static boolean isEmptySlot(String line) {return line.equals(EMPTY_SLOT);}
+
+    /**
+     * Parses one account line of the accounts file.
+     * The tokens are found by walking the characters of the line, and the pin and the amounts are converted without creating objects.
+     *
+     * @param line a line with the format [name] [lastName] [pin] [balance] [transaction1] ... [transactionN]
+     * @return the Account described by the line, with a history as deep as its number of transactions (null if the line is blank)
+     * @throws IllegalArgumentException if the line is missing fields, has an invalid number or has an amount that does not fit in cents
+     */
+    protected static Account parseAccount(String line) {
+
+        final int FIXED_FIELDS = 4;
+
+        // Start and end (exclusive) of each token (grown for histories deeper than the default)
+        int[] starts = new int[FIXED_FIELDS + Account.DEFAULT_DEPTH];
+        int[] ends = new int[FIXED_FIELDS + Account.DEFAULT_DEPTH];
 
-                name = fileReader.next();
-                lastName = fileReader.next();
-                pin = fileReader.nextInt();
-                balance = fileReader.nextDouble();
-                last5Transactions[0] = fileReader.nextDouble();
-                last5Transactions[1] = fileReader.nextDouble();
-                last5Transactions[2] = fileReader.nextDouble();
-                last5Transactions[3] = fileReader.nextDouble();
-                last5Transactions[4] = fileReader.nextDouble();
+        int length = line.length();
+        int pos = 0;
+        int field = 0;
 
-                accounts[i] = new Account(name, lastName, pin, balance, Arrays.copyOf(last5Transactions, 5));
+        while (true) {
+            while (pos < length && Character.isWhitespace(line.charAt(pos))) {pos++;}
+            if (pos == length) {break;}
+            if (field == starts.length) {
+                starts = Arrays.copyOf(starts, field * 2);
+                ends = Arrays.copyOf(ends, field * 2);
+            }
+            starts[field] = pos;
+            while (pos < length && !Character.isWhitespace(line.charAt(pos))) {pos++;}
+            ends[field] = pos;
+            field++;
+        }
 
-                i++;
+        if (field == 0) {return null;}
+        if (field <= FIXED_FIELDS) {throw new IllegalArgumentException("Account line is missing fields: " + line);}
 
+        String name = line.substring(starts[0], ends[0]);
+        String lastName = line.substring(starts[1], ends[1]);
+        Credential credential = parseCredential(line, starts[2], ends[2]);
+        // Amounts are read straight into cents
+        long balance;
+        long[] transactions = new long[field - FIXED_FIELDS];
+        try {
+            balance = Money.parse(line, starts[3], ends[3]);
+            for (int t = 0; t < transactions.length; t++) {
+                transactions[t] = Money.parse(line, starts[FIXED_FIELDS + t], ends[FIXED_FIELDS + t]);
             }
+        } catch (ArithmeticException TooLarge) {
+            // Files from when amounts were doubles may hold amounts like 1.0E24; the line is rejected rather than changed
+            throw new IllegalArgumentException("Account line has an amount too large to be kept in cents: " + line, TooLarge);
+        }
 
-            fileReader.close();
+        return new Account(name, lastName, credential, balance, transactions);
 
-        } catch (FileNotFoundException e) {
-            System.out.println("Error reading file.");
-            e.printStackTrace();
+    }
+
+    /**
+     * Parses the credential of an account line.
+     * Legacy encrypted PINs (plain ints) are read without creating a String.
+     *
+     * @param str the line
+     * @param start the index of the first character of the credential
+     * @param end the index after the last character of the credential
+     * @return the credential
+     * @throws IllegalArgumentException if the characters are not a credential
+     */
+    private static Credential parseCredential(String str, int start, int end) {
+        int separator = str.indexOf('$', start);
+        if (separator == -1 || separator >= end) {return Credential.legacy(parseInt(str, start, end));}
+        return Credential.parse(str.substring(start, end));
+    }
+
+    /**
+     * Parses a (possibly negative) int between two positions of a string.
+     *
+     * @param str the string that contains the number
+     * @param start the index of the first character of the number
+     * @param end the index after the last character of the number
+     * @return the parsed int
+     * @throws NumberFormatException if the characters are not a valid int
+     */
+    private static int parseInt(String str, int start, int end) {
+        boolean negative = str.charAt(start) == '-';
+        int i = (negative || str.charAt(start) == '+') ? start + 1 : start;
+        if (i == end) {throw new NumberFormatException("Invalid number: " + str.substring(start, end));}
+
+        long num = 0;
+        for (; i < end; i++) {
+            int digit = str.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {throw new NumberFormatException("Invalid number: " + str.substring(start, end));}
+            num = num * 10 + digit;
+            if (num > (long) Integer.MAX_VALUE + 1) {throw new NumberFormatException("Number out of range: " + str.substring(start, end));}
         }
 
+        num = negative ? -num : num;
+        if (num > Integer.MAX_VALUE) {throw new NumberFormatException("Number out of range: " + str.substring(start, end));}
+        return (int) num;
     }
 
     /**
      * Saves account information to the file specified by the 'fileName'.
      * Writes account details to the file, including a headline indicating the maximum number of accounts,followed by account details in each subsequent line.
+     * The accounts are written to [fileName].tmp through a buffered channel, forced to disk,
+     * and then the temporary file is atomically renamed over 'fileName'.
+     * This way the file is never missing or half written, even if the ATM stops in the middle of a save.
+     * Once the file is written, the journal is reset since the file already contains every change.
+     * No change can be made while saving, so nothing is recorded in the journal between the snapshot and the reset.
+     * Finally the slots of the accounts deleted since the last save are freed (see compactTombstones).
+     * While a persister runs (see startPersister), the dirty accounts are flushed instead, without holding up the sessions for the write.
      *
      * @throws IOException if an I/O error occurs while writing to the file
      *
@@ -123,46 +822,146 @@ public class ATM {
      *     "AEBank-AccountsFileIsValid-MaxAccounts:"
      *
      * ...followed by account details in each subsequent line.
+     * Line i holds account number i: the empty account numbers before the last account are written as "-" lines,
+     * so every account keeps its number when the file is loaded again (the journal records changes by account number).
      *
      * where:
      * [maxAccounts] is the maximum number of accounts allowed
      *
      * The format of each account line in the file is as follows:
-     * [name] [lastName] [pin] [balance] [transaction1] [transaction2] [transaction3] [transaction4] [transaction5]
+     * [name] [lastName] [pin] [balance] [transaction1] [transaction2] ... [transactionN]
      *
      * [name] is the first name of the account holder
      * [lastName] is the last name of the account holder
-     * [pin] is the encrypted personal identification number of the account holder
+     * [pin] is the credential of the account holder (see Credential)
      * [balance] is the current balance of the account
-     * [transaction1] through [transaction5] are the last 5 transactions made on the account
+     * [transaction1] through [transactionN] are the last N transactions made on the account (N is the depth of its history, 5 by default)
      */
     protected void saveAccounts() {
 
-        final String HEADLINE = "AEBank-AccountsFileIsValid-MaxAccounts:";
+        persistLock.lock();
+
+        // While a persister runs, only the dirty accounts are copied under the lock (see flush)
+        if (persister != null) {
+            try {flush();} finally {persistLock.unlock();}
+            return;
+        }
+
+        snapshotLock.writeLock().lock();
+
+        if (binary()) {
+            try {saveAccountsBinary();} finally {snapshotLock.writeLock().unlock(); persistLock.unlock();}
+            return;
+        }
 
         try {
 
-            File fd = new File(fileName);
+            Path target = Paths.get(fileName);
+            Path tmp = Paths.get(fileName + ".tmp");
 
-            if (fd.createNewFile()) {
-                System.out.println("File was created: " + fd.getName());
+            if (Files.exists(target)) {
+                System.out.println("File is being rewritten: " + target.getFileName());
             } else {
-                assert fd.delete();
-                if (fd.createNewFile()) {
-                    System.out.println("File is being rewritten: " + fd.getName());
-                }
+                System.out.println("File was created: " + target.getFileName());
             }
 
-            FileWriter fw = new FileWriter(fileName);
+            long crc = writeAccounts(tmp, accounts.toArray(), accounts.capacity());
+            replace(tmp, target);
 
-            fw.write(HEADLINE+maxAccounts);
-            for (int i = 0; i < accounts.length; i++) {
-                if (accounts[i] != null) {
-                    fw.write("\n" + accounts[i].toFile());
-                }
+            if (journal != null) {journal.reset(crc);}
+            if (ledger != null) {ledger.checkpoint();}
+            compactTombstones();
+
+            System.out.println("Accounts saved.");
+
+        } catch (IOException e) {
+            System.out.println("An error occurred.");
+            e.printStackTrace();
+        } finally {
+            snapshotLock.writeLock().unlock();
+            persistLock.unlock();
+        }
+
+    }
+
+    /**
+     * Writes the accounts to a text file and forces it to disk.
+     *
+     * @param tmp the file to write
+     * @param accounts the accounts (account i is written as account number i, null slots as EMPTY_SLOT lines)
+     * @param capacity the number of account numbers, written in the headline
+     * @return the checksum of the written file
+     * @throws IOException if an I/O error occurs while writing the file
+     */
+    private static long writeAccounts(Path tmp, Account[] accounts, int capacity) throws IOException {
+
+        final String HEADLINE = "AEBank-AccountsFileIsValid-MaxAccounts:";
+
+        FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        // The checksum of the written bytes is kept for the journal, so the file does not have to be read again
+        CheckedOutputStream checked = new CheckedOutputStream(Channels.newOutputStream(channel), new CRC32());
+        Writer fw = new BufferedWriter(new OutputStreamWriter(checked, Charset.defaultCharset()), 1 << 16);
+
+        // The headline holds the current capacity, so account numbers added by growing the table are kept
+        fw.write(HEADLINE+capacity);
+        // Empty slots are only written before an account, so trailing ones cost nothing
+        int empty = 0;
+        for (int i = 0; i < capacity; i++) {
+            if (accounts[i] == null) {
+                empty++;
+            } else {
+                for (; empty > 0; empty--) {fw.write("\n" + EMPTY_SLOT);}
+                fw.write("\n" + accounts[i].toFile());
             }
+        }
+
+        fw.flush();
+        channel.force(true);
+        fw.close();
+
+        return checked.getChecksum().getValue();
+
+    }
+
+    /**
+     * Renames a file over another one, atomically if the file system allows it.
+     *
+     * @param source the file to rename
+     * @param target the file it replaces
+     * @throws IOException if the file cannot be renamed
+     */
+    private static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Frees the slots of the accounts deleted since the last save, so new accounts can take them.
+     * Called by saveAccounts while holding the write lock of snapshotLock, once the deletions are in the saved file;
+     * only the tombstones are visited, not the whole account table.
+     */
+    private void compactTombstones() {
+        for (int i = tombstones.nextSetBit(0); i >= 0; i = tombstones.nextSetBit(i + 1)) {updateFreeSlot(i);}
+        tombstones.clear();
+    }
+
+    /**
+     * Saves account information to the BinaryAccountStore the accounts were loaded from.
+     * A new store is written and atomically renamed over the old one (see BinaryAccountStore.create),
+     * then the journal is reset.
+     */
+    private void saveAccountsBinary() {
+
+        try {
+
+            BinaryAccountStore.create(fileName, accounts.toArray(), accounts.capacity());
 
-            fw.close();
+            if (journal != null) {journal.reset(Journal.checksum(fileName));}
+            if (ledger != null) {ledger.checkpoint();}
+            compactTombstones();
 
             System.out.println("Accounts saved.");
 
@@ -173,47 +972,71 @@ public class ATM {
 
     }
 
+    /**
+     * Sets the depth of the history of the accounts created from now on.
+     * Existing accounts keep the depth they were loaded or created with.
+     *
+     * @param depth the number of transactions kept (at least 1)
+     * @throws IllegalArgumentException if the depth is less than 1
+     */
+    protected void setHistoryDepth(int depth) {
+        if (depth < 1) {throw new IllegalArgumentException("The history depth must be at least 1: " + depth);}
+        historyDepth = depth;
+    }
+
+    /**
+     * Retrieves the maximum number of accounts.
+     * It grows when an account is added while every account number is taken (see addAccount).
+     *
+     * @return the number of account numbers of the account table
+     */
+    protected synchronized int maxAccounts() {return accounts.capacity();}
+
     /**
      * Retrieves the account at the specified index.
      *
      * @param i the index of the account to retrieve
      * @return the Account object at the specified index
+     * @throws ArrayIndexOutOfBoundsException if the index is not below maxAccounts
      */
-    protected Account accounts(int i) {return accounts[i];}
+    protected synchronized Account accounts(int i) {return accounts.get(i);}
 
-    /** prints a divisor */
-    public static void divisor() {System.out.print("\n------------------------------ $ ------------------------------\n\n");}
+    /**
+     * prints a divisor
+     *
+     * @param terminal the terminal to print to
+     */
+    public static void divisor(Terminal terminal) {terminal.print("\n------------------------------ $ ------------------------------\n\n");}
 
     /**
      * Prompts the user to input an account number and validates the input.
+     * The number must hold an account; the bound is read again on every attempt, since the table may grow meanwhile.
      *
-     * @return the valid account number input by the user
+     * @param terminal the terminal of the user
+     * @return the valid account number input by the user (-1 if the user quit)
      */
-    public int getAccountNum() {
-
-        Scanner input = new Scanner(System.in);
+    public int getAccountNum(Terminal terminal) {
 
         int num = -1;
-        String numStr;
+        CharSequence numStr;
         boolean invalid;
-        int upperBound = (-1 == newAccountNum()) ? maxAccounts - 1 : newAccountNum() - 1;
 
-        while (num < 0 || num > upperBound) {
+        while (!isAccountNum(num)) {
 
             num = -1;
             invalid = true;
 
             while (invalid) {
 
-                System.out.print("Please input the account number: ");
-                numStr = input.nextLine();
-                if (numStr.equals("Quit")) {return -1;}
-                try {num = Integer.parseInt(numStr); invalid = false;}
-                catch (Exception NotAnInt) {System.out.print("Invalid input. ");}
+                terminal.print("Please input the account number: ");
+                numStr = terminal.nextToken();
+                if ("Quit".contentEquals(numStr)) {return -1;}
+                try {num = Integer.parseInt(numStr, 0, numStr.length(), 10); invalid = false;}
+                catch (Exception NotAnInt) {terminal.print("Invalid input. ");}
 
             }
 
-            if (num < 0 || num > upperBound) {System.out.print("Invalid number. ");}
+            if (!isAccountNum(num)) {terminal.print("Invalid number. ");}
 
         }
 
@@ -221,6 +1044,14 @@ public class ATM {
 
     }
 
+    /**
+     * Checks if a number is an account number holding an account.
+     *
+     * @param num the number
+     * @return true if it is within the account table and not empty
+     */
+    private synchronized boolean isAccountNum(int num) {return num >= 0 && num < accounts.capacity() && accounts.get(num) != null;}
+
     /**
      * Returns the account number for a given first name and last name.
      *
@@ -229,41 +1060,91 @@ public class ATM {
      * @return the account number associated with the specified first name and last name (-1 if no account with the given name and last name exists)
      */
     protected int namesToAccountNum(String userName, String userLastName) {
-        for (int i = 0; i < accounts.length; i++) {
-            if (accounts[i] != null && accounts[i].name().equals(userName) && accounts[i].lastName().equals(userLastName)) {
-                return i;
+        Integer accountNum = nameIndex.get(nameKey(userName, userLastName));
+        return (accountNum == null) ? -1 : accountNum;
+    }
+
+    /**
+     * Builds the key used by the name index.
+     * Names are read as single tokens, so a space cannot appear inside either of them.
+     *
+     * @param userName the first name of the account holder
+     * @param userLastName the last name of the account holder
+     * @return the composite "[name] [lastName]" key
+     */
+    private static String nameKey(String userName, String userLastName) {return userName + " " + userLastName;}
+
+    /**
+     * Adds an account number to the name index.
+     * If the name is already indexed, the lowest account number is kept (same result as the old linear scan).
+     *
+     * @param userName the first name of the account holder
+     * @param userLastName the last name of the account holder
+     * @param accountNum the account number to index
+     */
+    private void indexName(String userName, String userLastName, int accountNum) {
+        nameIndex.merge(nameKey(userName, userLastName), accountNum, Math::min);
+    }
+
+    /**
+     * Removes an account number from the name index.
+     * If another account holds the same name, it takes over the key.
+     *
+     * @param userName the first name of the account holder
+     * @param userLastName the last name of the account holder
+     * @param accountNum the account number to remove
+     */
+    private void unindexName(String userName, String userLastName, int accountNum) {
+        String key = nameKey(userName, userLastName);
+        if (nameIndex.remove(key, accountNum)) {
+            // Only happens with duplicated names, so the scan is rare
+            for (int i = 0; i < accounts.capacity(); i++) {
+                Account account = accounts.get(i);
+                if (i != accountNum && account != null && account.name().equals(userName) && account.lastName().equals(userLastName)) {
+                    nameIndex.put(key, i);
+                    break;
+                }
             }
         }
-        return -1;
     }
 
     /**
      * Checks if there is space available for a new account.
+     * When every account number is taken, the account table can still grow (up to AccountTable.MAX_CAPACITY).
      *
      * @return true if there is space available, false otherwise
      */
-    public boolean hasSpace() {
-        for (int i = 0; i < accounts.length; i++) {
-            if (accounts[i] == null) {
-                return true;
-            }
-        }
-        return false;
+    public synchronized boolean hasSpace() {return freeCount > 0 || accounts.canGrow();}
+
+    /**
+     * Finds the index of the available slot for a new account in the 'accounts' array.
+     * The highest empty index is used, and it is read from the free slot tracking instead of scanning the array.
+     *
+     * @return the index of the available slot for a new account (-1 if every account number is taken; addAccount grows the table then).
+     */
+    public synchronized int newAccountNum() {return freeSlots.length() - 1;}
+
+    /**
+     * Grows the account table by one chunk and marks the new account numbers as free.
+     * Only the new chunk is allocated, so sessions using other accounts are not held up by the growth.
+     */
+    private void growAccounts() {
+        int first = accounts.grow();
+        freeSlots.set(first, accounts.capacity());
+        freeCount += accounts.capacity() - first;
     }
 
     /**
-     * Finds the index of the first available slot for a new account in the 'accounts' array.
+     * Updates the free slot tracking after the slot at the specified index changes.
      *
-     * @return the index of the first available slot for a new account (-1 if there are no available slots).
+     * @param i the index of the slot that changed
      */
-    public int newAccountNum() {
-        int accountNum = -1;
-        for (int i = 0; i < accounts.length; i++) {
-            if (accounts[i] == null) {
-                accountNum = i;
-            }
+    private void updateFreeSlot(int i) {
+        boolean free = accounts.get(i) == null;
+        if (free != freeSlots.get(i)) {
+            freeSlots.set(i, free);
+            freeCount += free ? 1 : -1;
         }
-        return accountNum;
     }
 
     /**
@@ -271,56 +1152,378 @@ public class ATM {
      *
      * @param userName the first name of the account holder
      * @param userLastName the last name of the account holder
+     * @param terminal the terminal the PIN of the new account is asked on
      * @return the account number of the newly created account (-1 if no space is available for creating a new account).
      */
-    public int createNewAccount(String userName, String userLastName) {
+    public int createNewAccount(String userName, String userLastName, Terminal terminal) {
+
+        int accountNum = hasSpace() ? addAccount(new Account(userName, userLastName, terminal, historyDepth)) : -1;
+
+        terminal.println("Account created successfully!");
+
+        return accountNum;
+
+    }
+
+    /**
+     * Stores an account in the available slot and records it in the journal.
+     * If every account number is taken, the account table grows first.
+     *
+     * @param account the account to store
+     * @return the account number of the stored account (-1 if no space is available)
+     */
+    protected int addAccount(Account account) {
 
-        int accountNum = newAccountNum();
+        int accountNum;
 
-        if (accountNum != -1) {accounts[accountNum] = new Account(userName, userLastName);}
+        snapshotLock.readLock().lock();
+        try {
+            synchronized (this) {
+                if (freeCount == 0 && accounts.canGrow()) {growAccounts();}
+                accountNum = newAccountNum();
+                if (accountNum != -1) {
+                    accounts.set(accountNum, account);
+                    account.setAccountNum(accountNum);
+                    indexName(account.name(), account.lastName(), accountNum);
+                    updateFreeSlot(accountNum);
+                    markDirtySlot(accountNum);
+                    if (journal != null) {journal.create(account);}
+                    if (balances != null) {balances.add(account);}
+                }
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
 
-        System.out.println("Account created successfully!");
+        compactJournal();
 
         return accountNum;
 
     }
 
     /**
-     * Simulates a hacking attempt by:
-     * sorting the account array based on account balances in descending order,
-     * and displaying the account details, including name, last name, and account statistics.
+     * Stores an account replayed from the journal at the account number it was created with (see Journal).
+     * The account table grows first if the account number is past its capacity.
+     * Nothing is recorded, since the entry being replayed is already in the journal.
+     *
+     * @param accountNum the account number the account was created with
+     * @param account the account to store
+     * @return true if the account was stored, false if the account number is taken or invalid
      */
-    protected void hacker() {
+    protected synchronized boolean restoreAccount(int accountNum, Account account) {
+
+        while (accountNum >= accounts.capacity() && accounts.canGrow()) {growAccounts();}
+        if (accountNum < 0 || accountNum >= accounts.capacity() || accounts.get(accountNum) != null) {return false;}
+
+        accounts.set(accountNum, account);
+        account.setAccountNum(accountNum);
+        indexName(account.name(), account.lastName(), accountNum);
+        updateFreeSlot(accountNum);
 
-        Account[] accountsForHacker = Arrays.copyOf(accounts, accounts.length);
+        return true;
 
-        Account temp;
+    }
+
+    /**
+     * Applies a change to an account while holding its lock, so concurrent sessions cannot interleave with it.
+     * The change is also kept out of any snapshot being saved, the account is moved in the balance index if its balance changed,
+     * and the journal is compacted afterwards if needed.
+     * A deleted account is refused, so a session still holding it cannot bring it back into the journal, the ledger or the index.
+     *
+     * @param user the account
+     * @param change the change (it also records itself in the journal)
+     * @return the balance of the account right after the change, in cents
+     * @throws ArithmeticException if the change would overflow the balance (nothing is changed or recorded)
+     * @throws IllegalStateException if the account was deleted (nothing is changed or recorded)
+     */
+    private long change(Account user, Runnable change) {
+        long balance;
+        snapshotLock.readLock().lock();
+        try {
+            synchronized (user) {
+                if (user.deleted()) {throw new IllegalStateException("The account was deleted.");}
+                long oldBalance = user.balance();
+                change.run();
+                balance = user.balance();
+                markDirty(user);
+                if (balances != null) {balances.update(user, oldBalance, balance);}
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        compactJournal();
+        return balance;
+    }
 
-        for (int i = 0; i < accountsForHacker.length - 1; i++) {
+    /**
+     * Deposits an amount in an account and records it in the journal and the ledger.
+     *
+     * @param user the account
+     * @param amount the amount to be deposited, in cents
+     * @return the balance right after the deposit, in cents
+     * @throws ArithmeticException if the balance would overflow (nothing is changed or recorded)
+     * @throws IllegalStateException if the account was deleted (nothing is changed or recorded)
+     */
+    protected long deposit(Account user, long amount) {
+        return change(user, () -> {
+            user.deposit(amount);
+            if (journal != null) {journal.deposit(user, amount);}
+            if (ledger != null) {ledger.record(user.accountNum(), 'D', amount, user.balance());}
+        });
+    }
 
-            int maxIndex = i;
+    /**
+     * Withdraws an amount from an account and records it in the journal and the ledger.
+     *
+     * @param user the account
+     * @param amount the amount to be withdrawn, in cents
+     * @return the balance right after the withdrawal, in cents
+     * @throws ArithmeticException if the balance would overflow (nothing is changed or recorded)
+     * @throws IllegalStateException if the account was deleted (nothing is changed or recorded)
+     */
+    protected long withdraw(Account user, long amount) {
+        return change(user, () -> {
+            user.withdraw(amount);
+            if (journal != null) {journal.withdraw(user, amount);}
+            if (ledger != null) {ledger.record(user.accountNum(), 'W', amount, user.balance());}
+        });
+    }
 
-            for (int j = i + 1; j < accountsForHacker.length; j++) {
-                if (accountsForHacker[j] == null) {break;}
-                if (accountsForHacker[j].balance() > accountsForHacker[maxIndex].balance()) {
-                    maxIndex = j;
+    /**
+     * Applies a group of deposits and withdrawals to an account under a single lock, and records them in the journal and the ledger with a single flush each.
+     * The journal is not compacted afterwards; the caller is expected to call saveAccounts once all the groups are applied.
+     * Amounts that would overflow the balance are dropped, and the applied ones are moved to the front of 'amounts'.
+     * Nothing is applied to a deleted account (see change).
+     *
+     * @param user the account
+     * @param amounts the amounts in order, in cents (positive values are deposits, negative values are withdrawals)
+     * @param count the number of amounts to apply
+     * @return the number of amounts applied (0 if the account was deleted)
+     */
+    protected int applyTransactions(Account user, long[] amounts, int count) {
+        snapshotLock.readLock().lock();
+        try {
+            synchronized (user) {
+                if (user.deleted()) {return 0;}
+                long oldBalance = user.balance();
+                int applied = 0;
+                for (int i = 0; i < count; i++) {
+                    try {
+                        if (amounts[i] >= 0) {user.deposit(amounts[i]);} else {user.withdraw(Math.negateExact(amounts[i]));}
+                    } catch (ArithmeticException Overflow) {
+                        continue;
+                    }
+                    amounts[applied++] = amounts[i];
+                    if (ledger != null) {ledger.append(user.accountNum(), (amounts[i] >= 0) ? 'D' : 'W', Math.abs(amounts[i]), user.balance());}
                 }
+                if (journal != null) {journal.transactions(user, amounts, applied);}
+                if (ledger != null) {ledger.flush();}
+                markDirty(user);
+                if (balances != null) {balances.update(user, oldBalance, user.balance());}
+                return applied;
             }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the balance of an account and records it in the journal and the ledger.
+     *
+     * @param user the account
+     * @param newBalance the new balance, in cents
+     * @throws IllegalStateException if the account was deleted (nothing is changed or recorded)
+     */
+    protected void setBalance(Account user, long newBalance) {
+        change(user, () -> {
+            user.setBalance(newBalance);
+            if (journal != null) {journal.setBalance(user, newBalance);}
+            if (ledger != null) {ledger.record(user.accountNum(), 'S', newBalance, newBalance);}
+        });
+    }
+
+    /**
+     * Sets the credential of an account (its new PIN) and records it in the journal.
+     *
+     * @param user the account
+     * @param credential the credential of the new PIN (see Account.newCredential)
+     * @throws IllegalStateException if the account was deleted (nothing is changed or recorded)
+     */
+    protected void setPin(Account user, Credential credential) {
+        change(user, () -> {
+            user.setCredential(credential);
+            if (journal != null) {journal.setPin(user);}
+        });
+    }
+
+    /**
+     * Changes the names of an account and records it in the journal.
+     * The account is renamed in place, so sessions already holding it keep working on the same object.
+     *
+     * @param accountNum the account number
+     * @param userName the new first name
+     * @param userLastName the new last name
+     * @throws IllegalStateException if the account was deleted (nothing is changed or recorded)
+     */
+    protected void renameAccount(int accountNum, String userName, String userLastName) {
 
-            temp = accountsForHacker[maxIndex];
-            accountsForHacker[maxIndex] = accountsForHacker[i];
-            accountsForHacker[i] = temp;
+        snapshotLock.readLock().lock();
+        try {
+            synchronized (this) {
+                Account user = accounts.get(accountNum);
+                // deleteAccount empties the slot while holding the ATM, so an empty slot is the only sign of a deletion needed here
+                if (user == null) {throw new IllegalStateException("The account was deleted.");}
+                synchronized (user) {
+                    String oldName = user.name();
+                    String oldLastName = user.lastName();
+                    if (journal != null) {journal.rename(user, userName, userLastName);}
+                    user.rename(userName, userLastName);
+                    // Moving the account to its new key in the name index
+                    unindexName(oldName, oldLastName, accountNum);
+                    indexName(userName, userLastName, accountNum);
+                    markDirty(user);
+                }
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
         }
 
-        for (int i = 0; i < accountsForHacker.length; i++) {
-            if (accounts[i] != null) {
-                System.out.println("\nAccount: " + accounts[i].name() + " " + accounts[i].lastName());
-                accountsForHacker[i].displayStats();
+        compactJournal();
+
+    }
+
+    /**
+     * Deletes an account and records it in the journal.
+     * Its slot is emptied and marked with a tombstone; no other account moves, so every other account number stays the same.
+     * The slot becomes free again when saveAccounts compacts the tombstones (or when a flush has saved the deletion).
+     * The account is marked as deleted, so the sessions still holding it cannot change it anymore (see change).
+     *
+     * @param accountNum the account number
+     */
+    protected void deleteAccount(int accountNum) {
+
+        snapshotLock.readLock().lock();
+        try {
+            synchronized (this) {
+
+                Account user = accounts.get(accountNum);
+                if (user == null) {return;}
+
+                // Once marked, no change of a session can be in progress on the account nor start afterwards
+                synchronized (user) {user.markDeleted();}
+
+                accounts.set(accountNum, null);
+                tombstones.set(accountNum);
+                unindexName(user.name(), user.lastName(), accountNum);
+                markDirtySlot(accountNum);
+                // The slot is written empty, so the account itself is not looked for
+                if (dirtyAccounts.remove(user)) {dirtyCount.decrementAndGet();}
+
+                if (journal != null) {journal.delete(user);}
+                if (ledger != null) {ledger.forget(accountNum);}
+                if (balances != null) {balances.remove(user);}
+
             }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+
+        compactJournal();
+
+    }
+
+    /**
+     * Simulates a hacking attempt by
+     * displaying the account details, including name, last name, and account statistics,
+     * of every account in descending order of balance.
+     * The order is read from the balance index, so nothing is sorted.
+     *
+     * @param terminal the terminal to print to
+     */
+    protected void hacker(Terminal terminal) {
+
+        for (Account account : balances.descending()) {
+            terminal.print("\nAccount: ").print(account.name()).print(' ').println(account.lastName());
+            account.displayStats(terminal);
+        }
+
+        terminal.println();
+
+    }
+
+    /**
+     * Reports the accounts with the highest balances.
+     * Only the first 'n' accounts of the balance index are read (O(n log N) at most, whatever the number of accounts N).
+     *
+     * @param n the maximum number of accounts in the report
+     * @return up to 'n' accounts, the highest balance first
+     */
+    protected List<RankedAccount> topByBalance(int n) {
+        List<RankedAccount> report = new ArrayList<>(Math.min(n, 1024));
+        for (Account account : balances.top(n)) {
+            report.add(new RankedAccount(report.size() + 1, account.name(), account.lastName(), account.balance()));
+        }
+        return report;
+    }
+
+    /**
+     * Aggregates every account into a bank-wide report, in parallel (see ReportAggregator).
+     * The ATM is only held to copy the account table, and each account is read under its own lock,
+     * so sessions go on while the report runs; the totals are consistent for each account, but not a copy of one instant.
+     *
+     * @param bounds the upper bounds of the balance histogram buckets, ascending
+     * @return the report
+     */
+    protected BankReport report(double[] bounds) {
+        Account[] table;
+        synchronized (this) {table = accounts.toArray();}
+        return new ReportAggregator(table, bounds).run();
+    }
+
+    /**
+     * Sets the rate of the login attempts allowed to every session together.
+     *
+     * @param rate the number of attempts allowed per second, on average
+     * @param burst the number of attempts allowed at once
+     * @throws IllegalArgumentException if the rate is not positive or the burst is less than 1
+     */
+    protected void setLoginRate(double rate, int burst) {loginLimiter = new LoginRateLimiter(rate, burst);}
+
+    /**
+     * Checks the PIN typed to log in to an account.
+     * Blocked and locked accounts are refused first, so attempts on them cost nothing;
+     * then an attempt is taken from the login limiter, and only then is the PIN hashed (see Account.isOwner).
+     *
+     * @param user the account
+     * @param pin the PIN typed by the user (not encrypted)
+     * @return null if the user is the owner, otherwise the message telling why the login was refused
+     */
+    protected String login(Account user, int pin) {
+
+        if (user.blocked()) {return "Your account is blocked; you will not be able to make transactions until an administrator unblocks it.";}
+        if (user.lockedFor() > 0) {return lockedMessage(user.lockedFor());}
+        if (!loginLimiter.tryAcquire()) {return "The ATM is busy, please try again in a moment.";}
+
+        Credential before = user.credential();
+        if (user.isOwner(pin)) {
+            // A credential upgraded at login is saved with the account, so it is not hashed again after a restart
+            if (user.credential() != before) {touch(user);}
+            return null;
         }
 
-        System.out.println();
+        long lockedFor = user.lockedFor();
+        return (lockedFor > 0) ? "You inputted the wrong pin!\n" + lockedMessage(lockedFor) : "You inputted the wrong pin!";
+
+    }
 
+    /**
+     * Builds the message of a locked account.
+     *
+     * @param millis the milliseconds left before a PIN can be tried again
+     * @return the message
+     */
+    private static String lockedMessage(long millis) {
+        return "Too many wrong pins; your account is locked for the next " + ((millis + 999) / 1000) + " seconds.";
     }
 
     /**
@@ -328,120 +1531,106 @@ public class ATM {
      * The menu allows the user to perform various transactions and view account information.
      *
      * @param accountNum the account number for which the menu is displayed
+     * @param terminal the terminal of the user
      */
-    protected void menu(int accountNum) {
+    protected void menu(int accountNum, Terminal terminal) {
 
-        DecimalFormat df = new DecimalFormat("0.00");
-
-        Account user = accounts[accountNum];
+        Account user = accounts(accountNum);
+        // The account may have been deleted since its number was typed
+        if (user == null) {
+            terminal.println("The account was deleted.");
+            return;
+        }
+        String refused = login(user, Account.getPin(terminal));
 
-        if (user.isOwner(Account.getPin())) {
+        if (refused == null) {
             boolean exit = false;
             // The user is prompted until they choose to exit
             while (!exit) {
-                divisor(); // for aesthetics
+                divisor(terminal); // for aesthetics
 
                 // User is prompted; the switch acts accordingly to the user's choice
-                switch (user.getTransaction()) {
+                switch (user.getTransaction(terminal)) {
                     case 'D':
-                        divisor(); // for aesthetics
+                        divisor(terminal); // for aesthetics
                         // Stating the user's choice
-                        System.out.println("You have selected deposit.");
+                        terminal.println("You have selected deposit.");
                         // Asking for amount and updating balance
-                        user.deposit(Main.getPositiveNum("How much do you wish to deposit?"));
+                        try {
+                            deposit(user, Main.getPositiveAmount("How much do you wish to deposit?", terminal));
+                        } catch (ArithmeticException Overflow) {
+                            terminal.println("The deposit was rejected: the balance would be too large.");
+                        } catch (IllegalStateException Deleted) {
+                            terminal.println("The deposit was rejected: the account was deleted.");
+                        }
                         break;
                     case 'W':
-                        divisor(); // for aesthetics
+                        divisor(terminal); // for aesthetics
                         // Stating the user's choice
-                        System.out.println("\nYou have selected withdraw.");
+                        terminal.println("\nYou have selected withdraw.");
                         // Asking for amount and updating balance
-                        user.withdraw(Main.getPositiveNum("How much do you wish to withdraw?"));
+                        try {
+                            withdraw(user, Main.getPositiveAmount("How much do you wish to withdraw?", terminal));
+                        } catch (ArithmeticException Overflow) {
+                            terminal.println("The withdrawal was rejected: the balance would be too small.");
+                        } catch (IllegalStateException Deleted) {
+                            terminal.println("The withdrawal was rejected: the account was deleted.");
+                        }
                         break;
                     case 'C':
-                        divisor(); // for aesthetics
+                        divisor(terminal); // for aesthetics
                         // Outputting balance
-                        System.out.println("Your current balance is: " + df.format(user.balance()));
+                        terminal.print("Your current balance is: ").printMoney(user.balance()).println();
                         break;
                     case 'S':
-                        divisor(); // for aesthetics
-                        user.displayStats();
+                        divisor(terminal); // for aesthetics
+                        user.displayStats(terminal);
                         break;
                     case 'V':
-                        divisor(); // for aesthetics
-                        user.displayLast5Transactions();
+                        divisor(terminal); // for aesthetics
+                        user.displayLast5Transactions(terminal);
                         break;
                     case 'E':
-                        divisor(); // for aesthetics
+                        divisor(terminal); // for aesthetics
                         exit = true;
                         break;
                     case 'H':
-                        divisor(); // for aesthetics
-                        hacker();
+                        divisor(terminal); // for aesthetics
+                        hacker(terminal);
                         break;
                     case 'A':
-                        divisor(); // for aesthetics
-                        adminMenu();
+                        divisor(terminal); // for aesthetics
+                        adminMenu(terminal);
                         break;
                 }
             }
         } else {
-            System.out.println("You inputted the wrong pin!\nYour account is blocked; you will not be able to make transactions until an administrator resets the ATM.");
+            terminal.println(refused);
         }
     }
 
     /**
      * Prompts the administrator to input a transaction option and validates the input.
      *
+     * @param terminal the terminal of the administrator
      * @return the valid transaction option input by the administrator
      */
-    private static char getAdminTransaction() {
-
-        Scanner input = new Scanner(System.in);
-
-        // Creating list of options for user input
-        char[] transactionOptions = {'S', 'P', 'N', 'U', 'R', 'D', 'E'};
+    private static char getAdminTransaction(Terminal terminal) {
 
         // Outputting options to the user
-        System.out.println("Admin options: \n");
-        System.out.println("  S et balance");
-        System.out.println("  P in change");
-        System.out.println("  N ames change");
-        System.out.println("  U nblock account");
-        System.out.println("  R egular menu");
-        System.out.println("  D elete account");
-        System.out.println("  E xit");
-        System.out.println();
-
-        // Initializing variables
-        char transaction;
-        boolean validInput = true;
+        terminal.print("Admin options: \n\n").print(ADMIN_MENU);
 
         // Turning input to char type
-        transaction = input.next().toUpperCase().charAt(0);
-
-        // Checking input
-        for(int i = 0; i < transactionOptions.length; i++) {validInput = validInput && (transaction != transactionOptions[i]);}
+        char transaction = terminal.nextOption();
 
         // Prompt again while input is invalid
-        while (validInput) {
+        while (ADMIN_OPTIONS.indexOf(transaction) == -1) {
 
             // Prompting the user again
-            System.out.println("Please select one of the following options:\n");
-            System.out.println("  S et balance");
-            System.out.println("  P in change");
-            System.out.println("  N ames change");
-            System.out.println("  U nblock account");
-            System.out.println("  R egular menu");
-            System.out.println("  D elete account");
-            System.out.println("  E xit");
-            System.out.println();
+            terminal.print("Please select one of the following options:\n\n").print(ADMIN_MENU);
 
             // Turning input to char type
-            transaction = input.next().toUpperCase().charAt(0);
-
-            // Checking input
-            validInput = true;
-            for(int i = 0; i < transactionOptions.length; i++) {validInput = validInput && (transaction != transactionOptions[i]);}
+            transaction = terminal.nextOption();
         }
 
         return transaction;
@@ -457,90 +1646,86 @@ public class ATM {
         * unblocking accounts
         * opening the regular menu
         * deleting accounts
+     *
+     * @param terminal the terminal of the administrator
      */
-    protected void adminMenu() {
-
-        Scanner input = new Scanner(System.in);
-        DecimalFormat df = new DecimalFormat("0.00");
+    protected void adminMenu(Terminal terminal) {
 
-        int accountNum = getAccountNum();
+        int accountNum = getAccountNum(terminal);
         // code "create account"
 
         while (accountNum > 0) {
 
-            Account user = accounts[accountNum];
+            Account user = accounts(accountNum);
 
-            boolean exit = false;
+            // The account may have been deleted since its number was typed
+            boolean exit = (user == null);
+            if (exit) {terminal.println("The account was deleted.");}
             // The user is prompted until they choose to exit
             while (!exit) {
                 // User is prompted; the switch acts accordingly to the user's choice
-                switch (getAdminTransaction()) {
-                    case 'S':
-                        // Initializing variables
-                        double num = -1.0;
-                        String numStr;
-                        boolean invalid = true;
-
-                        while (invalid) {
-                            // Prompting user
-                            System.out.println("What is the new balance?");
-                            // Getting input
-                            numStr = input.next();
-                            // Trying to convert input
-                            try {
-                                num = Double.parseDouble(numStr);
-                                invalid = false;
+                try {
+                    switch (getAdminTransaction(terminal)) {
+                        case 'S':
+                            // Initializing variables
+                            long num = 0;
+                            CharSequence numStr;
+                            boolean invalid = true;
+
+                            while (invalid) {
+                                // Prompting user
+                                terminal.println("What is the new balance?");
+                                // Getting input
+                                numStr = terminal.nextToken();
+                                // Trying to convert input
+                                try {
+                                    num = Money.parse(numStr);
+                                    invalid = false;
+                                }
+                                // If the conversion fails (or the amount is too large) then the input is invalid and the user is prompted again
+                                catch (RuntimeException NotAnAmount) {
+                                    invalid = true;
+                                }
                             }
-                            // If the conversion fails then the input is invalid and the user is prompted again
-                            catch (Exception NotADouble) {
-                                invalid = true;
-                            }
-                        }
 
-                        // Asking for new amount of balance
-                        user.setBalance(num);
-                        break;
-                    case 'P':
-                        // Setting new pin
-                        user.getNewPassword();
-                        break;
-                    case 'N':
-                        // Getting new names
-                        System.out.println("What is the new first name? ");
-                        String userName = input.next();
-                        System.out.println("What is the new last name? ");
-                        String userLastName = input.next();
-                        // Updating (setting) new account
-                        accounts[accountNum] = new Account(userName, userLastName, user.pin(), user.balance(), user.last5Transactions());
-                        // Updating reference variable
-                        user = accounts[accountNum];
-                        break;
-                    case 'U':
-                        accounts[accountNum].unblock();
-                        break;
-                    case 'R':
-                        menu(accountNum);
-                        break;
-                    case 'D':
-                        int lastAccountNum = accounts.length - 1;
-                        for (int i = 0; i < accounts.length; i++) {
-                            if (accounts[i] == null) {
-                                lastAccountNum = i;
-                            }
-                        }
-                        for (int i = accountNum; i < lastAccountNum; i++) {
-                            accounts[i] = accounts[i + 1];
-                        }
-                        accounts[lastAccountNum] = null;
-                        exit = true;
-                        break;
-                    case 'E':
-                        exit = true;
-                        break;
+                            // Asking for new amount of balance
+                            setBalance(user, num);
+                            break;
+                        case 'P':
+                            // Setting new pin
+                            setPin(user, Account.getNewPassword(terminal));
+                            break;
+                        case 'N':
+                            // Getting new names
+                            terminal.println("What is the new first name? ");
+                            String userName = terminal.next();
+                            terminal.println("What is the new last name? ");
+                            String userLastName = terminal.next();
+                            renameAccount(accountNum, userName, userLastName);
+                            break;
+                        case 'U':
+                            // Through change, so a deleted account is refused like the other changes; unblocks are not journaled (see touch)
+                            change(user, () -> {user.unblock(); unjournaled = true;});
+                            break;
+                        case 'R':
+                            menu(accountNum, terminal);
+                            break;
+                        case 'D':
+                            deleteAccount(accountNum);
+                            exit = true;
+                            break;
+                        case 'E':
+                            exit = true;
+                            break;
+                    }
+                } catch (IllegalStateException Deleted) {
+                    // Another session may delete the account while the administrator is managing it
+                    terminal.println("The change was rejected: the account was deleted.");
+                    exit = true;
                 }
             }
 
-            accountNum = getAccountNum();
+            accountNum = getAccountNum(terminal);
 
         }
     }
@@ -0,0 +1,79 @@
+import java.io.IOException;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ATMServer {
+
+    /** The port the server listens on when none is given */
+    private static final int DEFAULT_PORT = 2120;
+
+    /**
+     * Creates the executor that runs the sessions.
+     *
+     * On Java 21 and newer every session runs on its own virtual thread, so thousands of idle terminals cost almost nothing.
+     * The executor is looked up by reflection so the ATM still compiles and runs on older Java versions,
+     * where it falls back to a cached pool of platform threads.
+     *
+     * @return the executor for the sessions
+     */
+    private static ExecutorService sessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException NoVirtualThreads) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Runs one ATM session for a connected terminal and closes the connection when the session ends.
+     *
+     * @param Atm the ATM shared by every session
+     * @param socket the connection of the terminal
+     */
+    private static void serve(ATM Atm, Socket socket) {
+        try {
+            new Session(Atm, new Terminal(socket.getInputStream(), socket.getOutputStream())).run();
+        } catch (IOException e) {
+            System.out.println("Error reading from " + socket.getRemoteSocketAddress() + ".");
+        } finally {
+            try {socket.close();} catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Serves ATM sessions to terminals connecting over TCP (e.g. with telnet or nc), all on one shared ATM.
+     * The accounts are saved in the background while it runs (see AccountPersister), and what is left when the server is stopped.
+     * Sessions are not encrypted, so the server only listens on the loopback interface unless another address is given.
+     *
+     * Usage: java ATMServer [port] [fileName] [address] [historyDepth]
+     *
+     * @param args the port (default 2120), the accounts file (default BankAccounts.txt), the address to listen on (default the loopback address)
+     *             and the number of transactions kept by the accounts created (default Account.DEFAULT_DEPTH)
+     */
+    public static void main(String[] args) throws IOException {
+
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        ATM Atm = (args.length > 1) ? new ATM(args[1]) : new ATM();
+        if (args.length > 3) {Atm.setHistoryDepth(Integer.parseInt(args[3]));}
+        Atm.startPersister(AccountPersister.DEFAULT_INTERVAL_MILLIS, AccountPersister.DEFAULT_THRESHOLD);
+
+        ExecutorService sessions = sessionExecutor();
+        Runtime.getRuntime().addShutdownHook(new Thread(Atm::stopPersister));
+
+        InetAddress address = (args.length > 2) ? InetAddress.getByName(args[2]) : InetAddress.getLoopbackAddress();
+        ServerSocket server = new ServerSocket(port, 1024, address);
+        System.out.println("AEBank's ATM is listening on " + address.getHostAddress() + " port " + port + ".");
+
+        while (true) {
+            Socket socket = server.accept();
+            sessions.execute(() -> serve(Atm, socket));
+        }
+
+    }
+
+}
@@ -0,0 +1,257 @@
+import java.io.IOException;
+
+import java.security.SecureRandom;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ATMService {
+
+    /*
+     * The operations on an account need the token given by authenticate, so knowing an account number is not enough to use it.
+     * A token stands for the account it was given for, not its account number: once the account is deleted the token is refused,
+     * even if a new account later takes the same number. Tokens are kept until logout.
+     */
+
+    /** The number of random bytes of a session token */
+    private static final int TOKEN_BYTES = 16;
+
+    /** Generates the session tokens */
+    private static final SecureRandom random = new SecureRandom();
+
+    /** Stores the ATM the operations are made on */
+    private final ATM Atm;
+
+    /** Stores the account of every session token given and not logged out yet */
+    private final Map<String, Account> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for the ATMService class.
+     *
+     * @param Atm the ATM the operations are made on
+     */
+    public ATMService(ATM Atm) {
+        this.Atm = Atm;
+    }
+
+    /**
+     * Finds the account for an account number.
+     *
+     * @param accountNum the account number
+     * @return the account (null if the number is out of range or the slot is empty)
+     */
+    private Account account(int accountNum) {
+        if (accountNum < 0 || accountNum >= Atm.maxAccounts()) {return null;}
+        return Atm.accounts(accountNum);
+    }
+
+    /**
+     * Finds the account of a session token.
+     * The token of a deleted account is dropped.
+     *
+     * @param token the session token
+     * @return the account (null if the token was not given, was logged out, or its account was deleted)
+     */
+    private Account session(String token) {
+        Account user = (token == null) ? null : sessions.get(token);
+        if (user != null && user.deleted()) {
+            sessions.remove(token);
+            return null;
+        }
+        return user;
+    }
+
+    /**
+     * Creates a new session token.
+     *
+     * @return a random token that cannot be guessed
+     */
+    private static String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Checks an amount given to deposit or withdraw.
+     *
+     * @param amount the amount
+     * @return true if the amount is positive
+     */
+    private static boolean isValidAmount(long amount) {return amount > 0;}
+
+    /**
+     * Looks up an account by name and checks its PIN (see ATM.login).
+     * Like the console menu, too many wrong PINs lock the account for a while.
+     *
+     * @param userName the first name of the account holder
+     * @param userLastName the last name of the account holder
+     * @param pin the PIN typed by the user (not encrypted)
+     * @return the result, holding the account number, balance and session token if the user is the owner
+     */
+    public TransactionResult authenticate(String userName, String userLastName, int pin) {
+        int accountNum = Atm.namesToAccountNum(userName, userLastName);
+        Account user = account(accountNum);
+        if (user == null) {return TransactionResult.failure(-1, "No account was found under that name.");}
+        String refused = Atm.login(user, pin);
+        if (refused != null) {return TransactionResult.failure(accountNum, refused);}
+        String token = newToken();
+        sessions.put(token, user);
+        return TransactionResult.authenticated(accountNum, user.balance(), token);
+    }
+
+    /**
+     * Ends a session; its token is refused afterwards.
+     *
+     * @param token the session token
+     */
+    public void logout(String token) {
+        if (token != null) {sessions.remove(token);}
+    }
+
+    /**
+     * Deposits an amount in the account of a session.
+     *
+     * @param token the session token (see authenticate)
+     * @param amount the amount to be deposited, in cents (positive)
+     * @return the result, holding the balance right after the deposit
+     */
+    public TransactionResult deposit(String token, long amount) {
+        Account user = session(token);
+        if (user == null) {return TransactionResult.failure(-1, "Not authenticated.");}
+        if (!isValidAmount(amount)) {return TransactionResult.failure(user.accountNum(), "The amount must be positive.");}
+        try {
+            return TransactionResult.success(user.accountNum(), Atm.deposit(user, amount));
+        } catch (ArithmeticException Overflow) {
+            return TransactionResult.failure(user.accountNum(), "The balance would overflow.");
+        } catch (IllegalStateException Deleted) {
+            sessions.remove(token);
+            return TransactionResult.failure(-1, "Not authenticated.");
+        }
+    }
+
+    /**
+     * Withdraws an amount from the account of a session.
+     *
+     * @param token the session token (see authenticate)
+     * @param amount the amount to be withdrawn, in cents (positive)
+     * @return the result, holding the balance right after the withdrawal
+     */
+    public TransactionResult withdraw(String token, long amount) {
+        Account user = session(token);
+        if (user == null) {return TransactionResult.failure(-1, "Not authenticated.");}
+        if (!isValidAmount(amount)) {return TransactionResult.failure(user.accountNum(), "The amount must be positive.");}
+        try {
+            return TransactionResult.success(user.accountNum(), Atm.withdraw(user, amount));
+        } catch (ArithmeticException Overflow) {
+            return TransactionResult.failure(user.accountNum(), "The balance would overflow.");
+        } catch (IllegalStateException Deleted) {
+            sessions.remove(token);
+            return TransactionResult.failure(-1, "Not authenticated.");
+        }
+    }
+
+    /**
+     * Retrieves the balance of the account of a session.
+     *
+     * @param token the session token (see authenticate)
+     * @return the result, holding the current balance
+     */
+    public TransactionResult balance(String token) {
+        Account user = session(token);
+        if (user == null) {return TransactionResult.failure(-1, "Not authenticated.");}
+        return TransactionResult.success(user.accountNum(), user.balance());
+    }
+
+    /**
+     * Retrieves the statistics of the account of a session (same values the 'S' option of the menu shows).
+     *
+     * @param token the session token (see authenticate)
+     * @return the statistics (null if the token is not valid)
+     */
+    public AccountStats stats(String token) {
+        Account user = session(token);
+        return (user == null) ? null : user.stats();
+    }
+
+    /**
+     * Retrieves the recent transactions of the account of a session, the most recent first.
+     * Positive values are deposits and negative values are withdrawals, in cents.
+     *
+     * @param token the session token (see authenticate)
+     * @return a copy of the recent transactions (null if the token is not valid)
+     */
+    public long[] history(String token) {
+        Account user = session(token);
+        return (user == null) ? null : user.transactions();
+    }
+
+    /**
+     * Reports the accounts with the highest balances (read from the balance index, nothing is sorted).
+     *
+     * @param n the maximum number of accounts in the report
+     * @return up to 'n' accounts, the highest balance first
+     */
+    public List<RankedAccount> topByBalance(int n) {return Atm.topByBalance(n);}
+
+    /**
+     * Aggregates every account into a bank-wide report (totals, balance histogram and transaction totals).
+     *
+     * @param bounds the upper bounds of the balance histogram buckets, ascending
+     * @return the report
+     * @throws IllegalArgumentException if the bounds are not ascending
+     */
+    public BankReport report(double[] bounds) {return Atm.report(bounds);}
+
+    /**
+     * Retrieves a page of the full history of the account of a session from the ledger, the most recent entries first.
+     *
+     * @param token the session token (see authenticate)
+     * @param cursor Ledger.NEWEST for the first page, or the next() cursor of the previous page
+     * @param limit the maximum number of entries of the page
+     * @return the page (null if the token is not valid or there is no ledger)
+     * @throws IOException if the ledger cannot be read
+     * @throws IllegalArgumentException if the cursor is not an entry of the account
+     */
+    public LedgerPage ledger(String token, long cursor, int limit) throws IOException {
+        Account user = session(token);
+        Ledger ledger = Atm.ledger();
+        return (user == null || ledger == null) ? null : ledger.page(user.accountNum(), cursor, limit);
+    }
+
+    /**
+     * Retrieves a page of the full history of the account of a session from the ledger, skipping its most recent entries.
+     *
+     * @param token the session token (see authenticate)
+     * @param offset the number of most recent entries to skip
+     * @param limit the maximum number of entries of the page
+     * @return the page (null if the token is not valid or there is no ledger)
+     * @throws IOException if the ledger cannot be read
+     */
+    public LedgerPage ledgerByOffset(String token, long offset, int limit) throws IOException {
+        Account user = session(token);
+        Ledger ledger = Atm.ledger();
+        return (user == null || ledger == null) ? null : ledger.pageByOffset(user.accountNum(), offset, limit);
+    }
+
+    /**
+     * Retrieves a page of the transactions of the account of a session made in a time range, the most recent first.
+     *
+     * @param token the session token (see authenticate)
+     * @param from the start of the range (milliseconds since the epoch, inclusive)
+     * @param to the end of the range (milliseconds since the epoch, exclusive)
+     * @param cursor Ledger.NEWEST for the first page, or the next() cursor of the previous page
+     * @param limit the maximum number of entries of the page
+     * @return the page (null if the token is not valid or there is no ledger)
+     * @throws IOException if the ledger cannot be read
+     * @throws IllegalArgumentException if the cursor is not an entry of the account
+     */
+    public LedgerPage ledgerByTime(String token, long from, long to, long cursor, int limit) throws IOException {
+        Account user = session(token);
+        Ledger ledger = Atm.ledger();
+        return (user == null || ledger == null) ? null : ledger.pageByTime(user.accountNum(), from, to, cursor, limit);
+    }
+
+}
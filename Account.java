@@ -1,8 +1,35 @@
-import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 public class Account {
 
+    /** The number of transactions kept by accounts when no depth is given */
+    public static final int DEFAULT_DEPTH = 5;
+
+    /** The options of the transaction menu */
+    private static final String TRANSACTION_OPTIONS = "DWCSVE";
+
+    /** The transaction menu, built once and printed in one piece */
+    private static final String TRANSACTION_MENU =
+            "  D eposit\n" +
+            "  W ithdraw\n" +
+            "  C heck balance\n" +
+            "  S how account statistics\n" +
+            "  V iew recent transactions\n" +
+            "  E xit\n" +
+            "\n";
+
+    /** Gives every account its serial number */
+    private static final AtomicLong serials = new AtomicLong();
+
+    /** Turns the PINs of every account into credentials and checks them (see setPinVerifier) */
+    private static volatile PinVerifier pinVerifier = new Pbkdf2PinVerifier();
+
+    /** Updates the lockout of the accounts without locking them */
+    private static final AtomicLongFieldUpdater<Account> lockouts = AtomicLongFieldUpdater.newUpdater(Account.class, "lockout");
+
     // Attributes
+    // (every method that reads or changes them is synchronized, so each account is locked on its own)
 
     /**
      * The first name of the account holder.
@@ -15,27 +42,89 @@ public class Account {
     private String lastName;
 
     /**
-     * The encrypted PIN for the account.
+     * The hash of the PIN of the account (see Credential).
      */
-    private int pin;
+    private Credential credential;
 
     /**
-     * An array storing the last 5 transactions made on the account.
+     * A ring buffer storing the last transactions made on the account, in cents (its length is the depth of the history).
      * Positive values represent deposits, while negative values represent withdrawals.
-     * The most recent transaction is stored first in the array.
+     * The most recent transaction is stored at 'head', the one before it at 'head + 1', and so on (wrapping around).
      */
-    private double[] last5Transactions;
+    private long[] history;
 
     /**
-     * The current balance of the account.
+     * The index of the most recent transaction in 'history'.
      */
-    private double balance;
+    private int head;
 
     /**
-     * True if the account is blocked
+     * The current balance of the account, in cents (see Money).
+     */
+    private long balance;
+
+    /**
+     * True if the account is blocked by an administrator (wrong PINs only lock it for a while, see lockout)
      */
     private boolean blocked;
 
+    /**
+     * True once the account is deleted; sessions still holding it can no longer change it (see ATM.deleteAccount)
+     */
+    private boolean deleted;
+
+    /**
+     * The account number of the account in its ATM (-1 until the ATM stores it); the journal records its changes under it
+     */
+    private int accountNum = -1;
+
+    /**
+     * The failed PIN attempts of the account (see Lockout); it is read and changed without the lock of the account.
+     */
+    private volatile long lockout;
+
+    /**
+     * The serial number of the account (unique while the ATM runs, it breaks ties in the balance index).
+     */
+    private final long serial = serials.getAndIncrement();
+
+    // Running statistics
+    // (updated by every transaction, so the statistics are answered in O(1) whatever the depth)
+
+    /**
+     * The number of values that went through the history window (the initial history included).
+     * It is the sequence number of the most recent transaction for the deques.
+     */
+    private long seq;
+
+    /**
+     * The sum of the transactions in the history window.
+     * It may wrap around while a huge amount is in the window, but it is exact again as soon as the true sum fits in a long.
+     */
+    private long windowSum;
+
+    /**
+     * The minimum and maximum of the transactions in the history window.
+     */
+    private MonotonicDeque windowMin;
+    private MonotonicDeque windowMax;
+
+    /**
+     * The number, sum, minimum and maximum of the transactions made since the account was loaded or created, in cents.
+     * The history it was loaded with and the journal replayed at startup were counted by the run that made them,
+     * so they are not counted again (see clearTotals).
+     */
+    private long count;
+    private long sum;
+    private long min;
+    private long max;
+
+    /**
+     * The total deposited and withdrawn over the same transactions, in cents (both clamped instead of overflowing).
+     */
+    private long deposits;
+    private long withdrawals;
+
 
     /**
      * Constructs an Account object with:
@@ -45,40 +134,63 @@ public class Account {
      *
      * @param name the first name of the account holder
      * @param lastName the last name of the account holder
+     * @param terminal the terminal the PIN is asked on
      */
-    public Account(String name, String lastName) {
+    public Account(String name, String lastName, Terminal terminal) {
+        this(name, lastName, terminal, DEFAULT_DEPTH);
+    }
+
+    /**
+     * Constructs an Account object with:
+         * the specified first name and last name
+         * a PIN inputted by the user
+         * zero balance
+         * a history of the specified depth
+     *
+     * @param name the first name of the account holder
+     * @param lastName the last name of the account holder
+     * @param terminal the terminal the PIN is asked on
+     * @param depth the number of transactions kept in the history
+     */
+    public Account(String name, String lastName, Terminal terminal, int depth) {
 
         this.name = name;
         this.lastName = lastName;
-        this.setPin();
-        this.balance = 0.00;
-        this.last5Transactions = new double[5];
+        this.setPin(terminal);
+        this.balance = 0;
+        this.history = new long[depth];
+        this.head = 0;
         this.blocked = false;
+        this.initStats();
 
     }
 
     /**
-     * Constructs an Account object with the specified first name, last name, PIN, balance, and last 5 transactions.
+     * Constructs an Account object with the specified first name, last name, PIN, balance, and last transactions.
      *
      * @param name the first name of the account holder
      * @param lastName the last name of the account holder
-     * @param pin the personal identification number (PIN) for the account
-     * @param balance the current balance of the account
-     * @param last5Transactions an array storing the last 5 transactions made on the account
+     * @param credential the hash of the personal identification number (PIN) for the account
+     * @param balance the current balance of the account, in cents
+     * @param transactions an array storing the last transactions made on the account in cents, the most recent first (its length is the depth of the history)
      */
-    protected Account(String name, String lastName, int pin, double balance, double[] last5Transactions) {
+    protected Account(String name, String lastName, Credential credential, long balance, long[] transactions) {
 
         this.name = name;
         this.lastName = lastName;
-        this.pin = pin;
+        this.credential = credential;
         this.balance = balance;
-        this.last5Transactions = last5Transactions;
+        this.history = transactions;
+        this.head = 0;
         this.blocked = false;
+        this.initStats();
 
     }
 
     /**
      * Encrypts a PIN using a simple encryption algorithm.
+     * Only used to check legacy credentials (files written before credentials, see Credential.legacy):
+     * 'g' is squared without being reduced, so it overflows and several PINs share the same value.
      *
      * @param pin the PIN to be encrypted
      * @return the encrypted PIN value
@@ -101,13 +213,13 @@ public class Account {
     /**
      * Prompts the user to input a valid PIN.
      *
+     * @param terminal the terminal of the user
      * @return the valid PIN input by the user
      */
-    public static int getPin() {
-        Scanner input = new Scanner(System.in);
+    public static int getPin(Terminal terminal) {
 
         int num = -1;
-        String numStr;
+        CharSequence numStr;
         boolean invalid;
 
         while (num < 2 || num > 9999) {
@@ -116,14 +228,14 @@ public class Account {
 
             while (invalid) {
 
-                System.out.print("Please input your pin: ");
-                numStr = input.next();
-                try {num = Integer.parseInt(numStr); invalid = false;}
-                catch(Exception NotAnInt) {invalid = true; System.out.print("Invalid pin. ");}
+                terminal.print("Please input your pin: ");
+                numStr = terminal.nextToken();
+                try {num = Integer.parseInt(numStr, 0, numStr.length(), 10); invalid = false;}
+                catch(Exception NotAnInt) {invalid = true; terminal.print("Invalid pin. ");}
 
             }
 
-            if (num < 2 || num > 9999) {System.out.print("Invalid pin. ");}
+            if (num < 2 || num > 9999) {terminal.print("Invalid pin. ");}
 
         }
 
@@ -132,64 +244,214 @@ public class Account {
     }
 
     /**
-     * Prompts the user to input a new PIN and encrypts it using the encryption algorithm.
+     * Prompts the user to input a new PIN and hashes it with the PIN verifier.
      *
      * After prompting the user to input a new PIN and confirming it,
-     * the method encrypts the PIN using the encryption algorithm and stores it in the account.
+     * the method hashes the PIN and returns its credential
+     * (the caller stores it with setCredential, so no lock is held while waiting for input).
+     *
+     * @param terminal the terminal of the user
+     * @return the credential of the new PIN
      */
-    protected void getNewPassword() {
+    protected static Credential getNewPassword(Terminal terminal) {
 
         int pin1 = 1;
         int pin2 = 0;
 
         while (pin1 != pin2) {
-            pin1 = Account.getPin();
-            System.out.println("\nPlease confirm your pin...");
-            pin2 = Account.getPin();
-            if (pin1 != pin2) {System.out.println("They have to match!");}
+            pin1 = Account.getPin(terminal);
+            terminal.println("\nPlease confirm your pin...");
+            pin2 = Account.getPin(terminal);
+            if (pin1 != pin2) {terminal.println("They have to match!");}
         }
 
-        pin = Account.encryptPassword(pin1);
+        return pinVerifier.create(pin1);
 
     }
 
     /**
-     * Determines if the provided user key matches the stored encrypted PIN.
+     * Determines if the provided user key matches the stored credential.
+     * A locked account (too many wrong PINs, see Lockout) is refused without hashing the key.
+     * Otherwise the attempt is counted as a failure before the key is hashed, so parallel guesses cannot get past the lockout,
+     * and a matching key clears the failures.
+     * The hash is computed without holding the lock of the account, so a slow hash does not hold up its other sessions.
+     * A matching key whose credential needs an upgrade (e.g. one hashed with fewer iterations) gets a new credential hashed from the key.
      *
      * @param userKey the user key to be checked
-     * @return true if the provided user key matches the stored encrypted PIN and the account is not blocked, false otherwise
+     * @return true if the provided user key matches the stored credential and the account is neither blocked nor locked, false otherwise
      */
     protected boolean isOwner(int userKey) {
-        blocked = blocked || Account.encryptPassword(userKey) != pin;
-        return !blocked;
+
+        PinVerifier verifier = pinVerifier;
+        Credential current;
+        synchronized (this) {
+            if (blocked) {return false;}
+            current = credential;
+        }
+
+        if (!startAttempt(System.currentTimeMillis())) {return false;}
+
+        boolean owner = verifier.verify(current, userKey);
+        if (!owner) {return false;}
+
+        lockout = 0;
+        Credential upgraded = verifier.needsUpgrade(current) ? verifier.create(userKey) : null;
+
+        synchronized (this) {
+            // The credential is kept if the PIN was changed meanwhile
+            if (upgraded != null && credential == current) {credential = upgraded;}
+            return !blocked;
+        }
+
+    }
+
+    /**
+     * Counts a PIN attempt as a failure, unless the account is locked.
+     *
+     * @param now the current time in milliseconds
+     * @return true if the attempt may go on, false if the account is locked
+     */
+    private boolean startAttempt(long now) {
+        while (true) {
+            long state = lockout;
+            if (Lockout.lockedFor(state, now) > 0) {return false;}
+            if (lockouts.compareAndSet(this, state, Lockout.failed(state, now))) {return true;}
+        }
     }
 
+    /**
+     * Computes how long the account stays locked after wrong PINs.
+     *
+     * @return the milliseconds left before a PIN can be tried again (0 if it can be tried now)
+     */
+    protected long lockedFor() {return Lockout.lockedFor(lockout, System.currentTimeMillis());}
+
+    /**
+     * Sets the verifier of the PINs of every account.
+     * The stored credentials keep working as long as the new verifier knows their scheme.
+     *
+     * @param verifier the verifier
+     */
+    public static void setPinVerifier(PinVerifier verifier) {pinVerifier = verifier;}
+
+    /**
+     * Retrieves the verifier of the PINs of every account.
+     *
+     * @return the verifier
+     */
+    public static PinVerifier pinVerifier() {return pinVerifier;}
+
+    /**
+     * Hashes a PIN with the PIN verifier.
+     *
+     * @param pin the PIN (not encrypted)
+     * @return the credential of the PIN
+     */
+    public static Credential newCredential(int pin) {return pinVerifier.create(pin);}
+
     /**
      * Updates the account balance after the user deposits an amount.
      *
-     * @param amount the amount to be deposited
+     * @param amount the amount to be deposited, in cents
+     * @throws ArithmeticException if the balance would overflow (nothing is changed)
      */
-    protected void deposit(double amount) {
-        balance  += amount;
-        last5Transactions[4] = last5Transactions[3];
-        last5Transactions[3] = last5Transactions[2];
-        last5Transactions[2] = last5Transactions[1];
-        last5Transactions[1] = last5Transactions[0];
-        last5Transactions[0] = amount;
+    protected synchronized void deposit(long amount) {
+        balance = Math.addExact(balance, amount);
+        record(amount);
     }
 
     /**
      * Updates the account balance after the user withdraws an amount.
      *
-     * @param amount the amount to be withdrawn
+     * @param amount the amount to be withdrawn, in cents
+     * @throws ArithmeticException if the balance would overflow (nothing is changed)
+     */
+    protected synchronized void withdraw(long amount) {
+        long negated = Math.negateExact(amount);
+        balance = Math.subtractExact(balance, amount);
+        record(negated);
+    }
+
+    /**
+     * Adds a transaction to the history, overwriting the oldest one (O(1) whatever the depth).
+     *
+     * @param amount the amount of the transaction in cents (negative for withdrawals)
+     */
+    private void record(long amount) {
+        head = (head == 0) ? history.length - 1 : head - 1;
+
+        // The oldest transaction leaves the window
+        windowSum += amount - history[head];
+        history[head] = amount;
+
+        seq++;
+        windowMin.push(seq, amount);
+        windowMax.push(seq, amount);
+        count(amount);
+    }
+
+    /**
+     * Sets up the running statistics from the history the account starts with.
+     * Only the window statistics use it; the counters of every transaction start at zero.
+     */
+    private void initStats() {
+        windowMin = new MonotonicDeque(history.length, false);
+        windowMax = new MonotonicDeque(history.length, true);
+        seq = 0;
+        count = 0;
+        sum = 0;
+        deposits = 0;
+        withdrawals = 0;
+        windowSum = 0;
+
+        // Oldest first, so the most recent transaction gets the highest sequence number
+        for (int i = history.length - 1; i >= 0; i--) {
+            seq++;
+            windowMin.push(seq, transaction(i));
+            windowMax.push(seq, transaction(i));
+            windowSum += transaction(i);
+        }
+    }
+
+    /**
+     * Sets the counters of every transaction back to zero (the history and its window statistics are kept).
+     * Called after the journal is replayed, since the replayed transactions were made before the ATM started.
      */
-    protected void withdraw(double amount) {
-        balance -= amount;
-        last5Transactions[4] = last5Transactions[3];
-        last5Transactions[3] = last5Transactions[2];
-        last5Transactions[2] = last5Transactions[1];
-        last5Transactions[1] = last5Transactions[0];
-        last5Transactions[0] = -amount;
+    protected synchronized void clearTotals() {
+        count = 0;
+        sum = 0;
+        min = 0;
+        max = 0;
+        deposits = 0;
+        withdrawals = 0;
+    }
+
+    /**
+     * Adds a transaction to the counters of every transaction.
+     *
+     * @param amount the amount of the transaction in cents
+     */
+    private void count(long amount) {
+        if (count == 0 || amount < min) {min = amount;}
+        if (count == 0 || amount > max) {max = amount;}
+        sum = Money.addSaturated(sum, amount);
+        if (amount >= 0) {
+            deposits = Money.addSaturated(deposits, amount);
+        } else {
+            withdrawals = Money.addSaturated(withdrawals, (amount == Long.MIN_VALUE) ? Long.MAX_VALUE : -amount);
+        }
+        count++;
+    }
+
+    /**
+     * Retrieves a transaction of the history.
+     *
+     * @param i the position of the transaction (0 is the most recent)
+     * @return the amount of the transaction in cents
+     */
+    private long transaction(int i) {
+        int index = head + i;
+        return history[(index >= history.length) ? index - history.length : index];
     }
 
     /**
@@ -204,36 +466,35 @@ public class Account {
      * @return an array of strings containing the summary of recent account activities
      */
     protected String[] statsToStrings() {
-        double min = last5Transactions[0];
-        double max = last5Transactions[0];
-        double average = 0.0;
+        AccountStats stats = stats();
         String[] returnArray = new String[4];
 
-        // min
-        for(int i = 1; i < last5Transactions.length - 1; i++) {
-            if(last5Transactions[i] < min) {min = last5Transactions[i];}
-        }
-
-        // max
-        for(int i = 1; i < last5Transactions.length - 1; i++) {
-            if(last5Transactions[i] > max) {max = last5Transactions[i];}
-        }
-
-        // average
-        for(int i = 0; i < last5Transactions.length - 1; i++) {
-            average += last5Transactions[i];
-        }
-        average /= last5Transactions.length;
-
-        returnArray[0] = "Minimum transaction: " + min;
-        returnArray[1] = "Maximum transaction: " + max;
-        returnArray[2] = "Average transaction: " + average;
-        returnArray[3] = "Current balance: " + balance;
+        returnArray[0] = "Minimum transaction: " + stats.min();
+        returnArray[1] = "Maximum transaction: " + stats.max();
+        returnArray[2] = "Average transaction: " + stats.average();
+        returnArray[3] = "Current balance: " + stats.balance();
 
         return returnArray;
 
     }
 
+    /**
+     * Retrieves the statistics of the account
+     *
+     * Including:
+         * the minimum, maximum and average of the transactions in the history
+         * current account balance
+         * the number, minimum, maximum and average of every transaction made since the account was loaded or created
+     *
+     * The values are kept up to date by every transaction, so no transaction is looped over (O(1) whatever the depth).
+     *
+     * @return the statistics of the account
+     */
+    protected synchronized AccountStats stats() {
+        return new AccountStats(Money.toDouble(windowMin.peek()), Money.toDouble(windowMax.peek()), Money.toDouble(windowSum) / history.length,
+                Money.toDouble(balance), count, Money.toDouble(min), Money.toDouble(max), (count == 0) ? 0.0 : Money.toDouble(sum) / count);
+    }
+
     /**
      * Prints the account information
      *
@@ -242,101 +503,74 @@ public class Account {
          * maximum transaction amount
          * average transaction amount
          * current account balance
+     *
+     * The values are computed first (see stats), so no lock is held while printing.
+     *
+     * @param terminal the terminal to print to
      */
-    protected void displayStats() {
-        double min = last5Transactions[0];
-        double max = last5Transactions[0];
-        double average = 0.0;
+    protected void displayStats(Terminal terminal) {
+        AccountStats stats = stats();
 
-        // min
-        for(int i = 1; i < last5Transactions.length; i++) {
-            if(last5Transactions[i] < min) {min = last5Transactions[i];}
-        }
-
-        // max
-        for(int i = 1; i < last5Transactions.length; i++) {
-            if(last5Transactions[i] > max) {max = last5Transactions[i];}
-        }
-
-        // average
-        for(int i = 0; i < last5Transactions.length - 1; i++) {
-            average += last5Transactions[i];
-        }
-        average /= last5Transactions.length;
-
-        System.out.println("Minimum transaction: " + min);
-        System.out.println("Maximum transaction: " + max);
-        System.out.println("Average transaction: " + average);
-        System.out.println("Current balance: " + balance);
+        terminal.print("Minimum transaction: ").print(stats.min()).println();
+        terminal.print("Maximum transaction: ").print(stats.max()).println();
+        terminal.print("Average transaction: ").print(stats.average()).println();
+        terminal.print("Current balance: ").print(stats.balance()).println();
     }
 
     /**
      * Returns a string containing the information of the account in a format suitable for saving to a file.
+     * The line ends with every transaction of the history (the most recent first), so it also carries the depth.
      *
      * @return a string with the account information formatted for file storage
      */
-    public String toFile() {
-        return name + " " + lastName + " " + pin + " " + balance + " " + last5Transactions[0] + " " + last5Transactions[1] + " " + last5Transactions[2] + " " + last5Transactions[3] + " " + last5Transactions[4];
+    public synchronized String toFile() {
+        StringBuilder line = new StringBuilder(160 + history.length * 8);
+        line.append(name).append(' ').append(lastName).append(' ').append(credential).append(' ');
+        Money.append(line, balance);
+        for (int i = 0; i < history.length; i++) {Money.append(line.append(' '), transaction(i));}
+        return line.toString();
+    }
+
+    /**
+     * Copies what is saved of the account (names, credential, balance, history and blocked flag) into a new account.
+     * The copy does not change with the account, so it can be written to a file without holding any lock (see ATM.flush).
+     *
+     * @return the copy of the account
+     */
+    protected synchronized Account copy() {
+        Account copy = new Account(name, lastName, credential, balance, transactions());
+        if (blocked) {copy.block();}
+        return copy;
     }
 
     /**
      * Prompts the user to select a transaction option and validates the input.
      *
+     * @param terminal the terminal of the user
      * @return the selected transaction option
      */
-    public char getTransaction() {
-
-        Scanner input = new Scanner(System.in);
-
-        // Creating list of options for user input
-        char[] transactionOptions = {'D', 'W', 'C', 'S', 'V', 'E'};
+    public char getTransaction(Terminal terminal) {
 
         // Outputting options to the user
-        System.out.println("Hi " + name + ", what can this AEBank's ATM do for you today?\n");
-        System.out.println("  D eposit");
-        System.out.println("  W ithdraw");
-        System.out.println("  C heck balance");
-        System.out.println("  S how account statistics");
-        System.out.println("  V iew recent transactions");
-        System.out.println("  E xit");
-        System.out.println();
-
-        // Initializing variables
-        String transactionStr;
-        char transaction;
-        boolean validInput = true;
+        terminal.print("Hi ").print(name()).print(", what can this AEBank's ATM do for you today?\n\n").print(TRANSACTION_MENU);
 
         // Getting input
-        transactionStr = input.next();
+        CharSequence transactionStr = terminal.nextToken();
 
         // User can only opt for hacker mode the first time.
-        if (transactionStr.equals("H4CK3R")) {return 'H';}
+        if ("H4CK3R".contentEquals(transactionStr)) {return 'H';}
 
         // Turning input to char type
-        transaction = transactionStr.toUpperCase().charAt(0);
-
-        // Checking input
-        for(int i = 0; i < transactionOptions.length; i++) {validInput = validInput && (transaction != transactionOptions[i]);}
+        char transaction = Character.toUpperCase(transactionStr.charAt(0));
 
         // Prompt again while input is invalid
-        while (validInput) {
+        while (TRANSACTION_OPTIONS.indexOf(transaction) == -1) {
 
             // Prompting the user again
-            System.out.println("Please select one of the following options:\n");
-            System.out.println("  D eposit");
-            System.out.println("  W ithdraw");
-            System.out.println("  C heck balance");
-            System.out.println("  S how account statistics");
-            System.out.println("  V iew recent transactions");
-            System.out.println("  E xit");
-            System.out.println();
+            terminal.print("Please select one of the following options:\n\n").print(TRANSACTION_MENU);
 
             // Turning input to char type
-            transaction = input.next().toUpperCase().charAt(0);
-
-            // Checking input
-            validInput = true;
-            for(int i = 0; i < transactionOptions.length; i++) {validInput = validInput && (transaction != transactionOptions[i]);}
+            transaction = terminal.nextOption();
         }
 
         return transaction;
@@ -344,13 +578,16 @@ public class Account {
     }
 
     /**
-     * Displays the last 5 transactions made on the account.
+     * Displays the last transactions made on the account (as many as the depth of the history).
      * Transactions with a value of 0 are skipped.
+     *
+     * @param terminal the terminal to print to
      */
-    protected void displayLast5Transactions() {
-        for (int i = 0; i < 5; i++) {
-            if (last5Transactions[i] != 0) {
-                System.out.println("Transaction " + (i + 1) + ": " + last5Transactions[i]);
+    protected void displayLast5Transactions(Terminal terminal) {
+        long[] transactions = transactions();
+        for (int i = 0; i < transactions.length; i++) {
+            if (transactions[i] != 0) {
+                terminal.print("Transaction ").print(i + 1).print(": ").printMoney(transactions[i]).println();
             }
         }
     }
@@ -359,14 +596,15 @@ public class Account {
      * Prompts the user to set a new PIN for the account and validates the input.
      *
      * The method ensures that the user inputs a valid PIN and confirms it correctly.
-     * Once the PIN is confirmed, it is encrypted and stored in the account.
+     * Once the PIN is confirmed, it is hashed by the PIN verifier and stored in the account.
+     *
+     * @param terminal the terminal of the user
      */
-    private void setPin() {
-        Scanner input = new Scanner(System.in);
+    private void setPin(Terminal terminal) {
 
         int num1;
         int num2;
-        String numStr;
+        CharSequence numStr;
         boolean invalid;
 
         num1 = -1;
@@ -383,21 +621,21 @@ public class Account {
 
                 while (invalid) {
 
-                    System.out.print("Please input your pin: ");
-                    numStr = input.next();
-                    //System.out.print("\n");
+                    terminal.print("Please input your pin: ");
+                    numStr = terminal.nextToken();
+                    //terminal.print("\n");
                     try {
-                        num1 = Integer.parseInt(numStr);
+                        num1 = Integer.parseInt(numStr, 0, numStr.length(), 10);
                         invalid = false;
                     } catch (Exception NotAnInt) {
                         invalid = true;
-                        System.out.print("Invalid pin. ");
+                        terminal.print("Invalid pin. ");
                     }
 
                 }
 
                 if (num1 < 2 || num1 > 9999) {
-                    System.out.print("Invalid pin. ");
+                    terminal.print("Invalid pin. ");
                 }
 
             }
@@ -408,52 +646,111 @@ public class Account {
 
                 while (invalid) {
 
-                    System.out.print("Please input your pin again: ");
-                    numStr = input.next();
-                    //System.out.print("\n");
+                    terminal.print("Please input your pin again: ");
+                    numStr = terminal.nextToken();
+                    //terminal.print("\n");
                     try {
-                        num2 = Integer.parseInt(numStr);
+                        num2 = Integer.parseInt(numStr, 0, numStr.length(), 10);
                         invalid = false;
                     } catch (Exception NotAnInt) {
                         invalid = true;
-                        System.out.print("Invalid pin. ");
+                        terminal.print("Invalid pin. ");
                     }
 
                 }
 
                 if (num2 < 2 || num2 > 9999) {
-                    System.out.print("Invalid pin. ");
+                    terminal.print("Invalid pin. ");
                 }
 
             }
 
             if (num1 != num2) {
-                System.out.print("Pins don't match, try again!");
+                terminal.print("Pins don't match, try again!");
             }
 
         }
 
-        pin = encryptPassword(num1);
+        credential = pinVerifier.create(num1);
 
     }
 
+    /**
+     * Sets the credential of the account (a new PIN, a migrated one, one upgraded at login, or one replayed from the journal).
+     *
+     * @param newCredential the credential
+     */
+    protected synchronized void setCredential(Credential newCredential) {credential = newCredential;}
+
     /**
      * Sets the balance of the account to the specified value.
      *
-     * @param newBalance the new balance to set for the account
+     * @param newBalance the new balance to set for the account, in cents
+     */
+    protected synchronized void setBalance(long newBalance) {balance = newBalance;}
+    /**
+     * Changes the names of the account holder.
+     *
+     * @param newName the new first name
+     * @param newLastName the new last name
+     */
+    protected synchronized void rename(String newName, String newLastName) {
+        name = newName;
+        lastName = newLastName;
+    }
+
+    /**
+     * Unblocks the account and forgets its wrong PINs.
+     */
+    protected synchronized void unblock() {
+        blocked = false;
+        lockout = 0;
+    }
+
+    /**
+     * Blocks the account (used when loading a blocked account from a binary store).
+     */
+    protected synchronized void block() {blocked = true;}
+
+    /**
+     * Marks the account as deleted.
+     */
+    protected synchronized void markDeleted() {deleted = true;}
+
+    /**
+     * Checks if the account is deleted.
+     *
+     * @return true if the account is deleted
+     */
+    protected synchronized boolean deleted() {return deleted;}
+
+    /**
+     * Sets the account number of the account (called by the ATM when it stores the account).
+     *
+     * @param accountNum the account number
+     */
+    protected synchronized void setAccountNum(int accountNum) {this.accountNum = accountNum;}
+
+    /**
+     * Retrieves the account number of the account.
+     *
+     * @return the account number (-1 if the account was never stored in an ATM)
      */
-    protected void setBalance(double newBalance) {balance = newBalance;}
+    protected synchronized int accountNum() {return accountNum;}
+
     /**
-     * Unblocks the account.
+     * Checks if the account is blocked.
+     *
+     * @return true if the account is blocked
      */
-    protected void unblock() {blocked = false;}
+    protected synchronized boolean blocked() {return blocked;}
 
     /**
      * Retrieves the current balance of the account.
      *
-     * @return the current balance of the account
+     * @return the current balance of the account, in cents
      */
-    protected double balance() {
+    protected synchronized long balance() {
         return balance;
     }
 
@@ -462,7 +759,7 @@ public class Account {
      *
      * @return the first name of the account holder
      */
-    public String name() {
+    public synchronized String name() {
         return name;
     }
 
@@ -471,26 +768,75 @@ public class Account {
      *
      * @return the last name of the account holder
      */
-    public String lastName() {
+    public synchronized String lastName() {
         return lastName;
     }
 
     /**
-     * Retrieves the encrypted PIN of the account.
+     * Retrieves the credential of the account.
+     *
+     * @return the hash of the PIN of the account
+     */
+    protected synchronized Credential credential() {
+        return credential;
+    }
+
+    /**
+     * Retrieves a copy of the last transactions made on the account, the most recent first.
+     *
+     * @return an array containing the last transactions made on the account, in cents (its length is the depth of the history)
+     */
+    protected synchronized long[] transactions() {
+        long[] transactions = new long[history.length];
+        // Copying the two parts of the ring buffer in order
+        System.arraycopy(history, head, transactions, 0, history.length - head);
+        System.arraycopy(history, 0, transactions, history.length - head, head);
+        return transactions;
+    }
+
+    /**
+     * Retrieves the number of transactions made since the account was loaded or created.
+     *
+     * @return the number of transactions
+     */
+    protected synchronized long transactionCount() {
+        return count;
+    }
+
+    /**
+     * Retrieves the total deposited since the account was loaded or created.
+     *
+     * @return the sum of the deposits, in cents
+     */
+    protected synchronized long depositTotal() {
+        return deposits;
+    }
+
+    /**
+     * Retrieves the total withdrawn since the account was loaded or created.
+     *
+     * @return the sum of the withdrawals (positive), in cents
+     */
+    protected synchronized long withdrawalTotal() {
+        return withdrawals;
+    }
+
+    /**
+     * Retrieves the serial number of the account.
      *
-     * @return the encrypted PIN of the account
+     * @return the serial number
      */
-    protected int pin() {
-        return pin;
+    protected long serial() {
+        return serial;
     }
 
     /**
-     * Retrieves the array containing the last 5 transactions made on the account.
+     * Retrieves the depth of the history (number of transactions kept).
      *
-     * @return an array containing the last 5 transactions made on the account
+     * @return the depth of the history
      */
-    protected double[] last5Transactions() {
-        return last5Transactions;
+    protected synchronized int depth() {
+        return history.length;
     }
 
 
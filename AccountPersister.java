@@ -0,0 +1,129 @@
+public class AccountPersister implements Runnable {
+
+    /*
+     * The background thread that saves the accounts of an ATM (see ATM.flush), so no session waits for the accounts file to be written.
+     * It checks every 'intervalMillis', or sooner when the ATM wakes it because 'threshold' accounts are dirty
+     * or the journal has grown past its compaction size, and flushes only when the journal cannot keep the changes any longer
+     * (see ATM.flushIfNeeded); a few dirty accounts stay in the journal instead of rewriting the whole accounts file.
+     * Several wakes before a flush are coalesced into one flush, and a flush with nothing dirty does nothing.
+     */
+
+    /** The default time between two checks, in milliseconds */
+    public static final long DEFAULT_INTERVAL_MILLIS = 1000L;
+
+    /** The default number of dirty accounts after which a flush starts without waiting for the interval */
+    public static final int DEFAULT_THRESHOLD = 1000;
+
+    /** Stores the ATM whose accounts are saved */
+    private final ATM atm;
+
+    /** Stores the time between two checks, in milliseconds */
+    private final long intervalMillis;
+
+    /** Stores the number of dirty accounts after which a flush is requested */
+    private final int threshold;
+
+    /** True if a flush was requested before the interval ended */
+    private volatile boolean wakeRequested;
+
+    /** False once the persister is stopped */
+    private volatile boolean running = true;
+
+    /** Stores the thread running the persister (null until it is started) */
+    private Thread thread;
+
+    /**
+     * Constructor for the AccountPersister class.
+     *
+     * @param atm the ATM whose accounts are saved
+     * @param intervalMillis the time between two checks, in milliseconds
+     * @param threshold the number of dirty accounts after which a flush is requested
+     * @throws IllegalArgumentException if the interval or the threshold is not positive
+     */
+    public AccountPersister(ATM atm, long intervalMillis, int threshold) {
+
+        if (intervalMillis <= 0) {throw new IllegalArgumentException("The interval must be positive: " + intervalMillis);}
+        if (threshold <= 0) {throw new IllegalArgumentException("The threshold must be positive: " + threshold);}
+
+        this.atm = atm;
+        this.intervalMillis = intervalMillis;
+        this.threshold = threshold;
+
+    }
+
+    /**
+     * Retrieves the number of dirty accounts after which a flush is requested.
+     *
+     * @return the threshold
+     */
+    public int threshold() {return threshold;}
+
+    /**
+     * Starts the thread of the persister.
+     * It is a daemon thread, so it does not keep the program running; stop flushes what is left.
+     */
+    public synchronized void start() {
+        thread = new Thread(this, "AccountPersister");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Requests a flush without waiting for the interval to end.
+     * Called after every change past the threshold, so it only takes the lock when no flush is requested yet.
+     */
+    public void wake() {
+        if (wakeRequested) {return;}
+        synchronized (this) {
+            wakeRequested = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stops the persister and waits for its thread to finish the flush it is doing (if any).
+     *
+     * @throws InterruptedException if interrupted while waiting for the thread
+     */
+    public void stop() throws InterruptedException {
+        Thread stopped;
+        synchronized (this) {
+            running = false;
+            notifyAll();
+            stopped = thread;
+        }
+        if (stopped != null) {stopped.join();}
+    }
+
+    /**
+     * Flushes the ATM if needed every interval, or when woken, until the persister is stopped.
+     * An error in one flush is printed and the next flush tries again, so the thread never dies silently.
+     */
+    public void run() {
+
+        while (true) {
+
+            synchronized (this) {
+                if (running && !wakeRequested) {
+                    try {
+                        wait(intervalMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {return;}
+                wakeRequested = false;
+            }
+
+            try {
+                atm.flushIfNeeded();
+            } catch (RuntimeException e) {
+                System.out.println("An error occurred.");
+                e.printStackTrace();
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+public class AccountStats {
+
+    /** The minimum transaction amount */
+    private final double min;
+
+    /** The maximum transaction amount */
+    private final double max;
+
+    /** The average transaction amount */
+    private final double average;
+
+    /** The balance of the account */
+    private final double balance;
+
+    /** The number of transactions made since the account was loaded or created */
+    private final long count;
+
+    /** The minimum of those transactions */
+    private final double allTimeMin;
+
+    /** The maximum of those transactions */
+    private final double allTimeMax;
+
+    /** The average of those transactions */
+    private final double allTimeAverage;
+
+    /**
+     * Constructor for the AccountStats class.
+     *
+     * @param min the minimum transaction amount
+     * @param max the maximum transaction amount
+     * @param average the average transaction amount
+     * @param balance the balance of the account
+     * @param count the number of transactions made since the account was loaded or created
+     * @param allTimeMin the minimum of those transactions
+     * @param allTimeMax the maximum of those transactions
+     * @param allTimeAverage the average of those transactions
+     */
+    public AccountStats(double min, double max, double average, double balance, long count, double allTimeMin, double allTimeMax, double allTimeAverage) {
+        this.min = min;
+        this.max = max;
+        this.average = average;
+        this.balance = balance;
+        this.count = count;
+        this.allTimeMin = allTimeMin;
+        this.allTimeMax = allTimeMax;
+        this.allTimeAverage = allTimeAverage;
+    }
+
+    /**
+     * Retrieves the minimum transaction amount.
+     *
+     * @return the minimum transaction amount
+     */
+    public double min() {return min;}
+
+    /**
+     * Retrieves the maximum transaction amount.
+     *
+     * @return the maximum transaction amount
+     */
+    public double max() {return max;}
+
+    /**
+     * Retrieves the average transaction amount.
+     *
+     * @return the average transaction amount
+     */
+    public double average() {return average;}
+
+    /**
+     * Retrieves the balance of the account when the statistics were computed.
+     *
+     * @return the balance of the account
+     */
+    public double balance() {return balance;}
+
+    /**
+     * Retrieves the number of transactions made since the account was loaded or created.
+     *
+     * @return the number of transactions
+     */
+    public long count() {return count;}
+
+    /**
+     * Retrieves the minimum transaction made since the account was loaded or created.
+     *
+     * @return the minimum transaction amount (0.0 if there was none)
+     */
+    public double allTimeMin() {return allTimeMin;}
+
+    /**
+     * Retrieves the maximum transaction made since the account was loaded or created.
+     *
+     * @return the maximum transaction amount (0.0 if there was none)
+     */
+    public double allTimeMax() {return allTimeMax;}
+
+    /**
+     * Retrieves the average transaction made since the account was loaded or created.
+     *
+     * @return the average transaction amount (0.0 if there was none)
+     */
+    public double allTimeAverage() {return allTimeAverage;}
+
+}
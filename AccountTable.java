@@ -0,0 +1,159 @@
+import java.util.Arrays;
+
+public class AccountTable {
+
+    /*
+     * A growable array of accounts made of fixed-size chunks:
+     *
+     *   account number i is in chunks[i >> CHUNK_BITS][i & CHUNK_MASK]
+     *
+     * Growing adds chunks and copies only the directory of chunks (one reference per CHUNK_SIZE accounts),
+     * so the accounts already stored are never copied and a session never waits for the whole table to be moved.
+     *
+     * The table is not thread-safe by itself; ATM reads and changes it while holding its own lock.
+     */
+
+    /** The number of bits of the index of an account within its chunk */
+    private static final int CHUNK_BITS = 12;
+
+    /** The number of accounts of each chunk */
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /** Masks the index of an account within its chunk */
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** The largest number of accounts the table can grow to */
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    /** Stores the chunks (the last one may be only partly within the capacity) */
+    private Account[][] chunks;
+
+    /** Stores the number of account numbers of the table */
+    private int capacity;
+
+    /**
+     * Constructor for the AccountTable class.
+     *
+     * @param capacity the number of account numbers (all of them empty)
+     * @throws IllegalArgumentException if the capacity is negative or above MAX_CAPACITY
+     */
+    public AccountTable(int capacity) {
+
+        if (capacity < 0 || capacity > MAX_CAPACITY) {throw new IllegalArgumentException("Invalid number of accounts: " + capacity);}
+
+        this.chunks = new Account[chunksFor(capacity)][];
+        for (int c = 0; c < chunks.length; c++) {chunks[c] = new Account[CHUNK_SIZE];}
+        this.capacity = capacity;
+
+    }
+
+    /**
+     * Copies an array of accounts into a new table (account i goes to account number i).
+     *
+     * @param accounts the accounts (null slots stay empty)
+     * @return the table, with as many account numbers as the array has slots
+     */
+    public static AccountTable of(Account[] accounts) {
+        AccountTable table = new AccountTable(accounts.length);
+        for (int c = 0; c < table.chunks.length; c++) {
+            int from = c << CHUNK_BITS;
+            System.arraycopy(accounts, from, table.chunks[c], 0, Math.min(CHUNK_SIZE, accounts.length - from));
+        }
+        return table;
+    }
+
+    /**
+     * Retrieves the account at an account number.
+     *
+     * @param i the account number
+     * @return the account (null if the account number is empty)
+     * @throws ArrayIndexOutOfBoundsException if the account number is not within the capacity
+     */
+    public Account get(int i) {
+        checkIndex(i);
+        return chunks[i >>> CHUNK_BITS][i & CHUNK_MASK];
+    }
+
+    /**
+     * Stores an account at an account number.
+     *
+     * @param i the account number
+     * @param account the account (null to empty the account number)
+     * @throws ArrayIndexOutOfBoundsException if the account number is not within the capacity
+     */
+    public void set(int i, Account account) {
+        checkIndex(i);
+        chunks[i >>> CHUNK_BITS][i & CHUNK_MASK] = account;
+    }
+
+    /**
+     * Retrieves the number of account numbers.
+     *
+     * @return the capacity
+     */
+    public int capacity() {return capacity;}
+
+    /**
+     * Checks if the table can grow.
+     *
+     * @return true if the capacity is below MAX_CAPACITY
+     */
+    public boolean canGrow() {return capacity < MAX_CAPACITY;}
+
+    /**
+     * Adds empty account numbers up to the end of the next chunk.
+     * At most one chunk is allocated, and only the directory of chunks is copied.
+     *
+     * @return the first new account number
+     * @throws IllegalStateException if the table is already at MAX_CAPACITY
+     */
+    public int grow() {
+
+        if (!canGrow()) {throw new IllegalStateException("The account table cannot grow past " + MAX_CAPACITY + " accounts.");}
+
+        int first = capacity;
+        int newCapacity = ((capacity >>> CHUNK_BITS) + 1) << CHUNK_BITS;
+
+        if (chunksFor(newCapacity) > chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunksFor(newCapacity));
+            chunks[chunks.length - 1] = new Account[CHUNK_SIZE];
+        }
+        capacity = newCapacity;
+
+        return first;
+
+    }
+
+    /**
+     * Copies the accounts into an array (account number i goes to index i).
+     *
+     * @return an array of 'capacity' accounts (null for empty account numbers)
+     */
+    public Account[] toArray() {
+        Account[] accounts = new Account[capacity];
+        for (int c = 0; c < chunks.length; c++) {
+            int from = c << CHUNK_BITS;
+            System.arraycopy(chunks[c], 0, accounts, from, Math.min(CHUNK_SIZE, capacity - from));
+        }
+        return accounts;
+    }
+
+    /**
+     * Computes the number of chunks that hold a number of accounts.
+     *
+     * @param capacity the number of accounts
+     * @return the number of chunks
+     */
+    private static int chunksFor(int capacity) {return (capacity + CHUNK_MASK) >>> CHUNK_BITS;}
+
+    /**
+     * Checks that an account number is within the capacity.
+     *
+     * @param i the account number
+     * @throws ArrayIndexOutOfBoundsException if it is not
+     */
+    private void checkIndex(int i) {
+        if (i < 0 || i >= capacity) {throw new ArrayIndexOutOfBoundsException("Account number out of range: " + i);}
+    }
+
+}
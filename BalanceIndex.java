@@ -0,0 +1,125 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+public class BalanceIndex {
+
+    /*
+     * Keeps every account ordered by balance, the highest first, in a concurrent skip list.
+     * Updates are O(log n) and the k highest balances are read in O(k + log n), without sorting anything.
+     *
+     * Each account has one entry holding the balance it was indexed with, so an update needs the old balance to find it.
+     * Ties are broken by the serial number of the account, so two accounts never share an entry.
+     * Readers never block: while an account is being moved they may miss it (or see it twice) for that instant.
+     */
+
+    /**
+     * An account with the balance it is indexed under.
+     */
+    private static class Entry implements Comparable<Entry> {
+
+        /** The balance the account is indexed under, in cents */
+        private final long balance;
+
+        /** The serial number of the account (breaks ties) */
+        private final long serial;
+
+        /** The account (null in entries only used to look others up) */
+        private final Account account;
+
+        /**
+         * Constructor for the Entry class.
+         *
+         * @param balance the balance the account is indexed under
+         * @param serial the serial number of the account
+         * @param account the account
+         */
+        private Entry(long balance, long serial, Account account) {
+            this.balance = balance;
+            this.serial = serial;
+            this.account = account;
+        }
+
+        /**
+         * Orders entries by balance (the highest first), then by serial number.
+         *
+         * @param other the entry to compare to
+         * @return a negative number if this entry goes first, a positive one if it goes after, 0 if they are the same account and balance
+         */
+        @Override
+        public int compareTo(Entry other) {
+            int byBalance = Long.compare(other.balance, balance);
+            return (byBalance != 0) ? byBalance : Long.compare(serial, other.serial);
+        }
+
+    }
+
+    /** Stores the entries, the highest balance first */
+    private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>();
+
+    /**
+     * Adds an account with its current balance.
+     *
+     * @param account the account
+     */
+    public void add(Account account) {entries.add(new Entry(account.balance(), account.serial(), account));}
+
+    /**
+     * Removes an account.
+     *
+     * @param account the account (holding the balance it was indexed under)
+     */
+    public void remove(Account account) {entries.remove(new Entry(account.balance(), account.serial(), null));}
+
+    /**
+     * Moves an account after its balance changed.
+     * The caller holds the lock of the account, so its updates are applied in order.
+     *
+     * @param account the account
+     * @param oldBalance the balance the account was indexed under, in cents
+     * @param newBalance the new balance, in cents
+     */
+    public void update(Account account, long oldBalance, long newBalance) {
+        if (oldBalance == newBalance) {return;}
+        entries.remove(new Entry(oldBalance, account.serial(), null));
+        entries.add(new Entry(newBalance, account.serial(), account));
+    }
+
+    /**
+     * Retrieves the accounts with the highest balances.
+     *
+     * @param n the maximum number of accounts
+     * @return up to 'n' accounts, the highest balance first
+     */
+    public List<Account> top(int n) {
+        List<Account> top = new ArrayList<>(Math.min(n, 1024));
+        Iterator<Entry> it = entries.iterator();
+        while (top.size() < n && it.hasNext()) {top.add(it.next().account);}
+        return top;
+    }
+
+    /**
+     * Retrieves every account, the highest balance first.
+     * The accounts are read from the index while iterating, so nothing is copied.
+     *
+     * @return the accounts in balance order
+     */
+    public Iterable<Account> descending() {
+        return () -> new Iterator<Account>() {
+            private final Iterator<Entry> it = entries.iterator();
+            @Override
+            public boolean hasNext() {return it.hasNext();}
+            @Override
+            public Account next() {return it.next().account;}
+        };
+    }
+
+    /**
+     * Retrieves the number of accounts in the index.
+     *
+     * @return the number of accounts (O(n), see ConcurrentSkipListSet.size)
+     */
+    public int size() {return entries.size();}
+
+}
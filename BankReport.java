@@ -0,0 +1,176 @@
+import java.util.Arrays;
+
+public class BankReport {
+
+    /** The number of accounts */
+    private final long accounts;
+
+    /** The number of blocked accounts */
+    private final long blockedAccounts;
+
+    /** The sum of every balance, in cents */
+    private final long totalBalance;
+
+    /** The lowest balance, in cents */
+    private final long minBalance;
+
+    /** The highest balance, in cents */
+    private final long maxBalance;
+
+    /** The number of transactions made since the accounts were loaded or created */
+    private final long transactions;
+
+    /** The total deposited over those transactions, in cents */
+    private final long totalDeposits;
+
+    /** The total withdrawn over those transactions, in cents */
+    private final long totalWithdrawals;
+
+    /** The upper bounds (exclusive) of the histogram buckets, ascending */
+    private final double[] bounds;
+
+    /** The number of accounts in each bucket (one more bucket than bounds, for balances at or above the last bound) */
+    private final long[] histogram;
+
+    /**
+     * Constructor for the BankReport class.
+     *
+     * @param accounts the number of accounts
+     * @param blockedAccounts the number of blocked accounts
+     * @param totalBalance the sum of every balance, in cents
+     * @param minBalance the lowest balance, in cents
+     * @param maxBalance the highest balance, in cents
+     * @param transactions the number of transactions
+     * @param totalDeposits the total deposited, in cents
+     * @param totalWithdrawals the total withdrawn, in cents
+     * @param bounds the upper bounds of the histogram buckets
+     * @param histogram the number of accounts in each bucket
+     */
+    public BankReport(long accounts, long blockedAccounts, long totalBalance, long minBalance, long maxBalance,
+                      long transactions, long totalDeposits, long totalWithdrawals, double[] bounds, long[] histogram) {
+        this.accounts = accounts;
+        this.blockedAccounts = blockedAccounts;
+        this.totalBalance = totalBalance;
+        this.minBalance = minBalance;
+        this.maxBalance = maxBalance;
+        this.transactions = transactions;
+        this.totalDeposits = totalDeposits;
+        this.totalWithdrawals = totalWithdrawals;
+        this.bounds = bounds;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Retrieves the number of accounts.
+     *
+     * @return the number of accounts
+     */
+    public long accounts() {return accounts;}
+
+    /**
+     * Retrieves the number of blocked accounts.
+     *
+     * @return the number of blocked accounts
+     */
+    public long blockedAccounts() {return blockedAccounts;}
+
+    /**
+     * Retrieves the sum of every balance.
+     *
+     * @return the total balance, in cents
+     */
+    public long totalBalance() {return totalBalance;}
+
+    /**
+     * Retrieves the lowest balance.
+     *
+     * @return the lowest balance in cents (0 if there are no accounts)
+     */
+    public long minBalance() {return minBalance;}
+
+    /**
+     * Retrieves the highest balance.
+     *
+     * @return the highest balance in cents (0 if there are no accounts)
+     */
+    public long maxBalance() {return maxBalance;}
+
+    /**
+     * Retrieves the average balance.
+     *
+     * @return the average balance (0.0 if there are no accounts)
+     */
+    public double averageBalance() {return (accounts == 0) ? 0.0 : Money.toDouble(totalBalance) / accounts;}
+
+    /**
+     * Retrieves the number of transactions made since the accounts were loaded or created.
+     *
+     * @return the number of transactions
+     */
+    public long transactions() {return transactions;}
+
+    /**
+     * Retrieves the total deposited since the accounts were loaded or created.
+     *
+     * @return the total deposits, in cents
+     */
+    public long totalDeposits() {return totalDeposits;}
+
+    /**
+     * Retrieves the total withdrawn since the accounts were loaded or created.
+     *
+     * @return the total withdrawals in cents (positive)
+     */
+    public long totalWithdrawals() {return totalWithdrawals;}
+
+    /**
+     * Retrieves the average transaction since the accounts were loaded or created.
+     *
+     * @return the average transaction amount (withdrawals count as negative, 0.0 if there were none)
+     */
+    public double averageTransaction() {return (transactions == 0) ? 0.0 : Money.toDouble(totalDeposits - totalWithdrawals) / transactions;}
+
+    /**
+     * Retrieves the upper bounds of the histogram buckets.
+     *
+     * @return a copy of the bounds, ascending
+     */
+    public double[] bounds() {return Arrays.copyOf(bounds, bounds.length);}
+
+    /**
+     * Retrieves the balance histogram.
+     * Bucket i counts the balances below bounds[i] (and at or above bounds[i - 1]); the last bucket counts the rest.
+     *
+     * @return a copy of the number of accounts in each bucket
+     */
+    public long[] histogram() {return Arrays.copyOf(histogram, histogram.length);}
+
+    /**
+     * Formats the report for display.
+     *
+     * @return the lines of the report
+     */
+    public String[] toLines() {
+
+        String[] lines = new String[9 + histogram.length];
+
+        lines[0] = "Accounts: " + accounts + " (" + blockedAccounts + " blocked)";
+        lines[1] = "Total balance: " + Money.toString(totalBalance);
+        lines[2] = "Average balance: " + averageBalance();
+        lines[3] = "Minimum balance: " + Money.toString(minBalance);
+        lines[4] = "Maximum balance: " + Money.toString(maxBalance);
+        lines[5] = "Transactions: " + transactions;
+        lines[6] = "Total deposits: " + Money.toString(totalDeposits);
+        lines[7] = "Total withdrawals: " + Money.toString(totalWithdrawals);
+        lines[8] = "Balance histogram:";
+
+        for (int i = 0; i < histogram.length; i++) {
+            String range = (i == 0) ? "below " + bounds[0] : (i == bounds.length) ? bounds[i - 1] + " and above" : bounds[i - 1] + " to " + bounds[i];
+            lines[9 + i] = "  " + range + ": " + histogram[i];
+        }
+
+        return lines;
+
+    }
+
+}
@@ -0,0 +1,177 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class BatchProcessor {
+
+    /** The upper bounds of the balance histogram of the end-of-day report */
+    private static final double[] REPORT_BOUNDS = {0.0, 100.0, 1000.0, 10000.0, 100000.0};
+
+    /** Stores the ATM the transactions are applied to */
+    private final ATM Atm;
+
+    /** Stores the number of transactions applied by the last run */
+    private long applied;
+
+    /** Stores the number of lines rejected by the last run (malformed, unknown account holder or overflowing the balance) */
+    private long rejected;
+
+    /**
+     * Holds the amounts of one account, in file order.
+     */
+    private static class Group {
+
+        /** Stores the account */
+        private final Account user;
+
+        /** Stores the amounts in cents (positive values are deposits, negative values are withdrawals) */
+        private long[] amounts = new long[8];
+
+        /** Stores the number of amounts */
+        private int count;
+
+        /**
+         * Constructor for the Group class.
+         *
+         * @param user the account
+         */
+        Group(Account user) {this.user = user;}
+
+        /**
+         * Adds an amount at the end of the group.
+         *
+         * @param amount the amount in cents
+         */
+        void add(long amount) {
+            if (count == amounts.length) {amounts = java.util.Arrays.copyOf(amounts, count * 2);}
+            amounts[count++] = amount;
+        }
+
+    }
+
+    /**
+     * Constructor for the BatchProcessor class.
+     *
+     * @param Atm the ATM the transactions are applied to
+     */
+    public BatchProcessor(ATM Atm) {
+        this.Atm = Atm;
+    }
+
+    /**
+     * Applies a transaction file to the ATM and saves the accounts once at the end.
+     *
+     * Each line of the file has the format:
+     * [name] [lastName] [D or W] [amount]
+     *
+     * Accounts are resolved with ATM.namesToAccountNum.
+     * The transactions are grouped by account (keeping their order within each account),
+     * and each group is applied under a single lock of its account, the groups running in parallel.
+     *
+     * @param fileName the name of the transaction file
+     * @throws IOException if the file cannot be read
+     */
+    public void run(String fileName) throws IOException {
+
+        applied = 0;
+        rejected = 0;
+
+        HashMap<Integer, Group> groups = new HashMap<>();
+
+        BufferedReader reader = new BufferedReader(new FileReader(fileName), 1 << 16);
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length == 1 && fields[0].isEmpty()) {continue;}
+
+            // Every line must be "[name] [lastName] [D|W] [amount]"
+            if (fields.length != 4) {
+                rejected++;
+                continue;
+            }
+
+            long amount;
+            try {
+                amount = Money.parse(fields[3]);
+            } catch (RuntimeException Malformed) {
+                rejected++;
+                continue;
+            }
+
+            int accountNum = Atm.namesToAccountNum(fields[0], fields[1]);
+            boolean deposit = fields[2].equalsIgnoreCase("D");
+            if (accountNum == -1 || amount <= 0 || (!deposit && !fields[2].equalsIgnoreCase("W"))) {
+                rejected++;
+                continue;
+            }
+
+            Group group = groups.get(accountNum);
+            if (group == null) {
+                group = new Group(Atm.accounts(accountNum));
+                groups.put(accountNum, group);
+            }
+            group.add(deposit ? amount : -amount);
+            applied++;
+
+        }
+
+        reader.close();
+
+        // Amounts that would overflow a balance (or go to an account deleted meanwhile) are dropped by applyTransactions, so they count as rejected
+        long queued = applied;
+        applied = new ArrayList<>(groups.values()).parallelStream().mapToLong(group -> Atm.applyTransactions(group.user, group.amounts, group.count)).sum();
+        rejected += queued - applied;
+
+        Atm.saveAccounts();
+
+    }
+
+    /**
+     * Retrieves the number of transactions applied by the last run.
+     *
+     * @return the number of applied transactions
+     */
+    public long applied() {return applied;}
+
+    /**
+     * Retrieves the number of lines rejected by the last run.
+     *
+     * @return the number of rejected lines
+     */
+    public long rejected() {return rejected;}
+
+    /**
+     * Applies an end-of-day transaction file to the accounts and reports the throughput.
+     *
+     * Usage: java BatchProcessor [transactionFile] [accountsFile]
+     *
+     * @param args the transaction file and the accounts file (default BankAccounts.txt)
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 1) {
+            System.out.println("Usage: java BatchProcessor [transactionFile] [accountsFile]");
+            return;
+        }
+
+        ATM Atm = (args.length > 1) ? new ATM(args[1]) : new ATM();
+        BatchProcessor processor = new BatchProcessor(Atm);
+
+        long start = System.nanoTime();
+        processor.run(args[0]);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("Applied %d transactions (%d lines rejected) in %d ms: %.0f transactions/s%n",
+                processor.applied(), processor.rejected(), elapsed / 1000000, processor.applied() / (elapsed / 1e9));
+
+        // End-of-day report
+        for (String line : Atm.report(REPORT_BOUNDS).toLines()) {System.out.println(line);}
+
+    }
+
+}
@@ -0,0 +1,204 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import java.util.Random;
+import java.util.function.IntToDoubleFunction;
+
+public class Benchmarks {
+
+    /** Account counts used when none are given */
+    private static final String DEFAULT_COUNTS = "10,1000,100000";
+
+    /** Nanoseconds each benchmark is warmed up for */
+    private static final long WARMUP_NANOS = 500_000_000L;
+
+    /** Nanoseconds each benchmark is measured for */
+    private static final long MEASURE_NANOS = 1_000_000_000L;
+
+    /** The histogram bounds of the measured reports */
+    private static final double[] REPORT_BOUNDS = {0.0, 100.0, 1000.0, 10000.0, 100000.0};
+
+    /** Keeps the results of the benchmarked calls so the JIT cannot drop them */
+    private static volatile double sink;
+
+    /** Stores the real System.out (it is swapped for a null stream while measuring) */
+    private static final PrintStream console = System.out;
+
+    /** Stores the stream the ATM messages go to while measuring */
+    private static final PrintStream nullStream = new PrintStream(OutputStream.nullOutputStream());
+
+    /** Reads the bytes allocated by the benchmark thread */
+    private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** The input of one scripted session: a deposit, a withdrawal, the balance, the statistics and the history, then quitting */
+    private static final String SESSION_SCRIPT = "Name0 LastName0 1234 D 10 W 5 C S V E Quit Quit\n";
+
+    /** Stores the benchmarks to run (only names containing it run) */
+    private static String filter = "";
+
+    /**
+     * Measures one operation: warms it up, then runs it in growing batches until MEASURE_NANOS have passed.
+     *
+     * @param name the name of the benchmark
+     * @param numAccounts the number of accounts of the ATM
+     * @param op the operation (it gets the index of the call and returns a value for the sink)
+     */
+    private static void bench(String name, int numAccounts, IntToDoubleFunction op) {
+
+        if (!name.contains(filter)) {return;}
+
+        System.setOut(nullStream);
+
+        runFor(WARMUP_NANOS, op);
+        long[] measured = runFor(MEASURE_NANOS, op);
+
+        System.setOut(console);
+
+        double nanosPerOp = (double) measured[1] / measured[0];
+        double bytesPerOp = (double) measured[2] / measured[0];
+        System.out.printf("%-28s %10d %16.1f %16.0f %12.1f%n", name, numAccounts, nanosPerOp, 1e9 / nanosPerOp, bytesPerOp);
+
+    }
+
+    /**
+     * Runs an operation in growing batches for at least the specified time.
+     *
+     * @param nanos the minimum time to run for
+     * @param op the operation
+     * @return the number of calls, the nanoseconds they took and the bytes they allocated (on the calling thread)
+     */
+    private static long[] runFor(long nanos, IntToDoubleFunction op) {
+        long calls = 0;
+        long elapsed = 0;
+        int batch = 1;
+        double total = 0.0;
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        while (elapsed < nanos) {
+            long start = System.nanoTime();
+            for (int i = 0; i < batch; i++) {total += op.applyAsDouble((int) (calls + i));}
+            elapsed += System.nanoTime() - start;
+            calls += batch;
+            if (batch < (1 << 20)) {batch *= 2;}
+        }
+        sink = total;
+        allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+        return new long[] {calls, elapsed, allocated};
+    }
+
+    /**
+     * Runs every benchmark for one account count.
+     *
+     * @param numAccounts the number of accounts
+     * @throws IOException if the accounts file cannot be written
+     */
+    private static void benchAll(int numAccounts) throws IOException {
+
+        File fd = File.createTempFile("Benchmarks", ".txt");
+        String fileName = fd.getPath();
+
+        LoaderBenchmark.writeAccountsFile(fileName, numAccounts);
+
+        System.setOut(nullStream);
+        ATM atm = new ATM(fileName);
+        System.setOut(console);
+
+        Random random = new Random(212);
+        int[] lookups = new int[1024];
+        for (int i = 0; i < lookups.length; i++) {lookups[i] = random.nextInt(numAccounts);}
+
+        Account account = atm.accounts(0);
+        // Nothing is read from this terminal, so it is flushed after each call (a session flushes at every prompt)
+        Terminal terminal = new Terminal(System.in, nullStream);
+
+        bench("ATM.getAccounts", numAccounts, i -> new ATM(fileName).maxAccounts());
+        bench("ATM.saveAccounts", numAccounts, i -> {atm.saveAccounts(); return i;});
+        bench("ATM.namesToAccountNum", numAccounts, i -> {
+            int n = lookups[i & 1023];
+            return atm.namesToAccountNum("Name" + n, "LastName" + n);
+        });
+        bench("ATM.newAccountNum", numAccounts, i -> atm.newAccountNum());
+        bench("ATM.hacker", numAccounts, i -> {atm.hacker(terminal); terminal.flush(); return i;});
+        bench("ATM.topByBalance(10)", numAccounts, i -> atm.topByBalance(10).size());
+        bench("ATM.report", numAccounts, i -> atm.report(REPORT_BOUNDS).totalBalance());
+        bench("ATM.deposit (journaled)", numAccounts, i -> atm.deposit(account, Money.SCALE));
+        bench("Account.deposit", numAccounts, i -> {account.deposit(Money.SCALE); return i;});
+        bench("Account.withdraw", numAccounts, i -> {account.withdraw(Money.SCALE); return i;});
+        bench("Account.displayStats", numAccounts, i -> {account.displayStats(terminal); terminal.flush(); return i;});
+        bench("Account.statsToStrings", numAccounts, i -> account.statsToStrings().length);
+
+        // A login checks the PIN typed against the stored credential (see LoginBenchmark for logins on many threads)
+        Credential credential = Account.newCredential(1234);
+        bench("PinVerifier.verify", numAccounts, i -> Account.pinVerifier().verify(credential, 1234) ? 1 : 0);
+
+        // One terminal replaying the script forever, so every call runs one whole session of the menus
+        // (it logs in faster than the default login rate allows, which would measure refused logins instead)
+        atm.setLoginRate(1e6, 1000);
+        atm.setPin(atm.accounts(atm.namesToAccountNum("Name0", "LastName0")), credential);
+        Terminal sessionTerminal = new Terminal(new ScriptStream(SESSION_SCRIPT), OutputStream.nullOutputStream());
+        bench("Session (scripted)", numAccounts, i -> {new Session(atm, sessionTerminal).run(); return i;});
+
+        LoaderBenchmark.deleteAccountsFiles(fileName);
+
+    }
+
+    /**
+     * Runs the benchmark suite of the ATM and Account hot paths.
+     *
+     * Usage: java Benchmarks [counts] [filter]
+     *
+     * @param args the comma-separated account counts (default 10,1000,100000, up to 10000000)
+     *             and a filter on the benchmark names (e.g. "deposit")
+     */
+    public static void main(String[] args) throws IOException {
+
+        String[] counts = ((args.length > 0) ? args[0] : DEFAULT_COUNTS).split(",");
+        filter = (args.length > 1) ? args[1] : "";
+
+        System.out.printf("%-28s %10s %16s %16s %12s%n", "Benchmark", "Accounts", "ns/op", "ops/s", "B/op");
+
+        for (String count : counts) {benchAll(Integer.parseInt(count.trim()));}
+
+    }
+
+    /**
+     * An input stream that repeats the same text forever.
+     */
+    private static class ScriptStream extends InputStream {
+
+        /** Stores the bytes of the text */
+        private final byte[] script;
+
+        /** Stores the position of the next byte */
+        private int pos;
+
+        /**
+         * Constructor for the ScriptStream class.
+         *
+         * @param script the text to repeat
+         */
+        ScriptStream(String script) {this.script = script.getBytes(StandardCharsets.UTF_8);}
+
+        @Override
+        public int read() {
+            int b = script[pos];
+            pos = (pos + 1 == script.length) ? 0 : pos + 1;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            int n = Math.min(length, script.length - pos);
+            System.arraycopy(script, pos, buffer, offset, n);
+            pos = (pos + n == script.length) ? 0 : pos + n;
+            return n;
+        }
+
+    }
+
+}
@@ -0,0 +1,359 @@
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+public class BinaryAccountStore {
+
+    /*
+     * File layout:
+     *
+     *   Header (HEADER_SIZE bytes):
+     *     [magic int] [version int] [maxAccounts int] [depth int] [namesStart long] [namesEnd long]
+     *
+     *   Records (maxAccounts * recordSize bytes, recordSize = FIXED_RECORD_SIZE + 8 * depth), record i is account number i:
+     *     [flags byte] [3 unused bytes] [credential length int]
+     *     [name offset long] [name length int] [lastName length int] [lastName offset long]
+     *     [balance long] [credential offset long] [account depth int] [4 unused bytes]
+     *     [transaction1 long] ... [transactionN long] (in cents, most recent first, N = account depth)
+     *   The depth of the header is the deepest history of the accounts; the slots after the account depth are zeros.
+     *
+     *   Names (from namesStart to namesEnd):
+     *     UTF-8 bytes of every name and credential (see Credential), pointed to by the offsets of the records.
+     *
+     * A store is written once by create and then only read: the records are memory-mapped, and ATM reads
+     * every record once when it starts (it needs every name and balance for its indexes) and closes the store.
+     * Changes go to the journal, and a save creates a new store, so a store file is never left half changed.
+     *
+     * One mapping cannot exceed 2 GB, so the records are mapped in segments of whole records (see SEGMENT_SIZE),
+     * and positions in the file are longs.
+     */
+
+    /** The first int of every store file ("AEBK") */
+    private static final int MAGIC = 0x4145424B;
+
+    /** The version of the layout */
+    private static final int VERSION = 4;
+
+    /** The size of the header in bytes */
+    private static final int HEADER_SIZE = 32;
+
+    /** The size of each record in bytes, without the transactions */
+    private static final int FIXED_RECORD_SIZE = 56;
+
+    /** The largest size of one mapped segment of records in bytes (a segment holds at least one record) */
+    private static final int SEGMENT_SIZE = 1 << 30;
+
+    /** The flag set on records that hold an account */
+    private static final byte OCCUPIED = 1;
+
+    /** The flag set on records of blocked accounts */
+    private static final byte BLOCKED = 2;
+
+    /** The extension of store files (ATM opens files ending with it as binary stores) */
+    public static final String EXTENSION = ".bin";
+
+    /** Stores the channel of the store file */
+    private final FileChannel channel;
+
+    /** Stores the memory-mapped records, in segments of recordsPerSegment records */
+    private final MappedByteBuffer[] segments;
+
+    /** Stores the number of records of each segment (the last one may hold fewer) */
+    private final int recordsPerSegment;
+
+    /** Stores the maximum number of accounts (number of records) */
+    private final int maxAccounts;
+
+    /** Stores the number of transactions of each record */
+    private final int depth;
+
+    /** Stores the size of each record in bytes */
+    private final int recordSize;
+
+    /**
+     * Constructor for the BinaryAccountStore class.
+     * Opens an existing store file and maps its records (read-only).
+     *
+     * @param fileName the name of the store file
+     * @throws IOException if the file cannot be opened or is not a store file
+     */
+    public BinaryAccountStore(String fileName) throws IOException {
+
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Not an account store: " + fileName);
+        }
+
+        this.maxAccounts = header.getInt(8);
+        this.depth = header.getInt(12);
+        this.recordSize = FIXED_RECORD_SIZE + 8 * depth;
+        this.recordsPerSegment = Math.max(1, SEGMENT_SIZE / recordSize);
+
+        this.segments = new MappedByteBuffer[(int) (((long) maxAccounts + recordsPerSegment - 1) / recordsPerSegment)];
+        for (int s = 0; s < segments.length; s++) {
+            long first = (long) s * recordsPerSegment;
+            long count = Math.min(recordsPerSegment, maxAccounts - first);
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * recordSize, count * recordSize);
+        }
+
+    }
+
+    /**
+     * Writes a new store file with the specified accounts.
+     * The store is written to [fileName].tmp, forced to disk and then atomically renamed over 'fileName'.
+     * Its depth is the deepest history of the accounts; each record keeps the depth of its account, so shorter histories are
+     * padded with zeros in the file but come back with their own depth.
+     *
+     * @param fileName the name of the store file
+     * @param accounts the accounts to store (account i goes to record i, null slots are left empty)
+     * @param maxAccounts the number of records of the store
+     * @throws IOException if an I/O error occurs while writing the file
+     */
+    public static void create(String fileName, Account[] accounts, int maxAccounts) throws IOException {
+
+        Path target = Paths.get(fileName);
+        Path tmp = Paths.get(fileName + ".tmp");
+
+        FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        int depth = 1;
+        for (Account account : accounts) {
+            if (account != null) {depth = Math.max(depth, account.depth());}
+        }
+        int recordSize = FIXED_RECORD_SIZE + 8 * depth;
+
+        long namesStart = HEADER_SIZE + (long) maxAccounts * recordSize;
+
+        // Records and names are written through two buffers, each one flushed at its own position
+        ByteBuffer recordBuffer = ByteBuffer.allocate(recordSize * 1024);
+        ByteBuffer nameBuffer = ByteBuffer.allocate(1 << 16);
+        // Empty records are all zeros, so they are copied from one shared buffer
+        byte[] emptyRecord = new byte[recordSize];
+        long recordPos = HEADER_SIZE;
+        long namePos = namesStart;
+        long namesEnd = namesStart;
+
+        for (int i = 0; i < maxAccounts; i++) {
+
+            Account account = (i < accounts.length) ? accounts[i] : null;
+
+            if (account == null) {
+                recordBuffer.put(emptyRecord);
+            } else {
+                byte[] name = account.name().getBytes(StandardCharsets.UTF_8);
+                byte[] lastName = account.lastName().getBytes(StandardCharsets.UTF_8);
+                byte[] credential = account.credential().toString().getBytes(StandardCharsets.UTF_8);
+                int length = name.length + lastName.length + credential.length;
+
+                if (nameBuffer.remaining() < length) {
+                    namePos += writeFully(out, nameBuffer, namePos);
+                    if (nameBuffer.capacity() < length) {nameBuffer = ByteBuffer.allocate(length);}
+                }
+
+                putRecord(recordBuffer, account, depth, namesEnd, name.length, namesEnd + name.length, lastName.length,
+                        namesEnd + name.length + lastName.length, credential.length);
+                nameBuffer.put(name).put(lastName).put(credential);
+                namesEnd += length;
+            }
+
+            if (!recordBuffer.hasRemaining()) {recordPos += writeFully(out, recordBuffer, recordPos);}
+
+        }
+
+        recordPos += writeFully(out, recordBuffer, recordPos);
+        namePos += writeFully(out, nameBuffer, namePos);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(maxAccounts).putInt(depth).putLong(namesStart).putLong(namesEnd);
+        writeFully(out, header, 0);
+
+        out.force(true);
+        out.close();
+
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+    }
+
+    /**
+     * Puts the fields of an account at the position of a buffer.
+     *
+     * Histories shorter than the depth of the store are padded with zeros.
+     *
+     * @param buffer the buffer to put the record in (FIXED_RECORD_SIZE + 8 * depth bytes are put)
+     * @param account the account
+     * @param depth the number of transactions of each record (at least the depth of the account)
+     * @param nameOffset the position of the first name in the file
+     * @param nameLength the length of the first name in bytes
+     * @param lastNameOffset the position of the last name in the file
+     * @param lastNameLength the length of the last name in bytes
+     * @param credentialOffset the position of the credential in the file
+     * @param credentialLength the length of the credential in bytes
+     */
+    private static void putRecord(ByteBuffer buffer, Account account, int depth,
+                                  long nameOffset, int nameLength, long lastNameOffset, int lastNameLength, long credentialOffset, int credentialLength) {
+        buffer.put((byte) (OCCUPIED | (account.blocked() ? BLOCKED : 0))).put((byte) 0).putShort((short) 0);
+        buffer.putInt(credentialLength);
+        buffer.putLong(nameOffset).putInt(nameLength).putInt(lastNameLength).putLong(lastNameOffset);
+        buffer.putLong(account.balance());
+        buffer.putLong(credentialOffset);
+        long[] transactions = account.transactions();
+        buffer.putInt(transactions.length).putInt(0);
+        for (int t = 0; t < depth; t++) {buffer.putLong((t < transactions.length) ? transactions[t] : 0);}
+    }
+
+    /**
+     * Retrieves the number of records of the store.
+     *
+     * @return the maximum number of accounts
+     */
+    public int maxAccounts() {return maxAccounts;}
+
+    /**
+     * Checks if a record holds an account.
+     *
+     * @param i the account number
+     * @return true if record i holds an account, false if it is empty
+     */
+    public boolean isOccupied(int i) {return (segment(i).get(recordPos(i)) & OCCUPIED) != 0;}
+
+    /**
+     * Reads an account from its record.
+     *
+     * @param i the account number
+     * @return the account stored in record i (null if the record is empty)
+     * @throws IOException if the names cannot be read
+     */
+    public Account read(int i) throws IOException {
+
+        if (!isOccupied(i)) {return null;}
+
+        MappedByteBuffer records = segment(i);
+        int pos = recordPos(i);
+
+        String name = readString(records.getLong(pos + 8), records.getInt(pos + 16));
+        String lastName = readString(records.getLong(pos + 24), records.getInt(pos + 20));
+
+        Credential credential = Credential.parse(readString(records.getLong(pos + 40), records.getInt(pos + 4)));
+
+        long[] transactions = new long[records.getInt(pos + 48)];
+        for (int t = 0; t < transactions.length; t++) {transactions[t] = records.getLong(pos + FIXED_RECORD_SIZE + t * 8);}
+
+        Account account = new Account(name, lastName, credential, records.getLong(pos + 32), transactions);
+        if ((records.get(pos) & BLOCKED) != 0) {account.block();}
+
+        return account;
+
+    }
+
+    /**
+     * Closes the store file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void close() throws IOException {channel.close();}
+
+    /**
+     * Finds the mapped segment holding a record.
+     *
+     * @param i the account number
+     * @return the segment of record i
+     * @throws IndexOutOfBoundsException if there is no record i
+     */
+    private MappedByteBuffer segment(int i) {
+        if (i < 0 || i >= maxAccounts) {throw new IndexOutOfBoundsException("No record " + i);}
+        return segments[i / recordsPerSegment];
+    }
+
+    /**
+     * Finds the position of a record in its segment (see segment).
+     *
+     * @param i the account number
+     * @return the position of record i in its segment
+     */
+    private int recordPos(int i) {return (i % recordsPerSegment) * recordSize;}
+
+    /**
+     * Reads a UTF-8 string from the names of the store.
+     *
+     * @param offset the position of the first byte
+     * @param length the number of bytes
+     * @return the decoded string
+     * @throws IOException if the bytes cannot be read
+     */
+    private String readString(long offset, int length) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        readFully(bytes, offset);
+        return new String(bytes.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads bytes from the store file until the buffer is full.
+     *
+     * @param buffer the buffer to fill
+     * @param position the position of the first byte
+     * @throws IOException if the end of the file is reached first
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {throw new IOException("Account store is truncated");}
+        }
+    }
+
+    /**
+     * Writes the content of a buffer at a position of a channel, then clears the buffer.
+     *
+     * @param out the channel
+     * @param buffer the buffer (written from 0 to its position)
+     * @param position the position of the first byte in the channel
+     * @return the number of bytes written
+     * @throws IOException if an I/O error occurs
+     */
+    private static int writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        int written = buffer.remaining();
+        while (buffer.hasRemaining()) {out.write(buffer, position + buffer.position());}
+        buffer.clear();
+        return written;
+    }
+
+    /**
+     * Converts a text accounts file (with its journal) to a binary store.
+     *
+     * Usage: java BinaryAccountStore [textFile] [storeFile]
+     *
+     * @param args the name of the text file (default BankAccounts.txt) and of the store (default BankAccounts.bin)
+     */
+    public static void main(String[] args) throws IOException {
+
+        String textFile = (args.length > 0) ? args[0] : "BankAccounts.txt";
+        String storeFile = (args.length > 1) ? args[1] : "BankAccounts" + EXTENSION;
+
+        ATM atm = new ATM(textFile);
+
+        Account[] accounts = new Account[atm.maxAccounts()];
+        for (int i = 0; i < accounts.length; i++) {accounts[i] = atm.accounts(i);}
+
+        create(storeFile, accounts, accounts.length);
+
+        System.out.println("Converted " + textFile + " to " + storeFile + ".");
+
+    }
+
+}
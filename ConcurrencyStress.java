@@ -0,0 +1,84 @@
+import java.io.File;
+import java.io.IOException;
+
+import java.util.concurrent.CountDownLatch;
+
+public class ConcurrencyStress {
+
+    /**
+     * Runs many threads depositing into and withdrawing from the same few accounts of one ATM,
+     * then checks that no update was lost, both in memory and after reloading the file and its journal.
+     *
+     * Usage: java ConcurrencyStress [threads] [operationsPerThread] [accounts]
+     *
+     * @param args the number of threads (default 16), operations per thread (default 20000) and accounts (default 4)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        int numThreads = (args.length > 0) ? Integer.parseInt(args[0]) : 16;
+        int operations = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+        int numAccounts = (args.length > 2) ? Integer.parseInt(args[2]) : 4;
+
+        File fd = File.createTempFile("ConcurrencyStress", ".txt");
+        String fileName = fd.getPath();
+
+        LoaderBenchmark.writeAccountsFile(fileName, numAccounts);
+        ATM atm = new ATM(fileName);
+
+        // Balances are in cents, so the expected balances are exact whatever the order of the operations
+        long[] startBalances = new long[numAccounts];
+        for (int i = 0; i < numAccounts; i++) {
+            startBalances[i] = 1000L * Money.SCALE * i;
+            atm.setBalance(atm.accounts(i), startBalances[i]);
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[numThreads];
+
+        for (int t = 0; t < numThreads; t++) {
+            final int seed = t;
+            threads[t] = new Thread(() -> {
+                try {start.await();} catch (InterruptedException e) {return;}
+                for (int op = 0; op < operations; op++) {
+                    Account user = atm.accounts((seed + op) % numAccounts);
+                    // Every thread deposits 2 and withdraws 1, so each operation pair adds 1
+                    if (op % 2 == 0) {atm.deposit(user, 2 * Money.SCALE);} else {atm.withdraw(user, Money.SCALE);}
+                }
+            });
+            threads[t].start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {thread.join();}
+        long elapsed = System.nanoTime() - startTime;
+
+        // Counting how many deposits and withdrawals went to each account
+        long[] expected = startBalances.clone();
+        for (int t = 0; t < numThreads; t++) {
+            for (int op = 0; op < operations; op++) {expected[(t + op) % numAccounts] += (op % 2 == 0) ? 2 * Money.SCALE : -Money.SCALE;}
+        }
+
+        ATM reloaded = new ATM(fileName);
+
+        boolean ok = true;
+        for (int i = 0; i < numAccounts; i++) {
+            long inMemory = atm.accounts(i).balance();
+            long onDisk = reloaded.accounts(i).balance();
+            if (inMemory != expected[i] || onDisk != expected[i]) {
+                System.out.println("Account " + i + ": expected " + expected[i] + ", in memory " + inMemory + ", reloaded " + onDisk);
+                ok = false;
+            }
+        }
+
+        long total = (long) numThreads * operations;
+        System.out.printf("%d operations on %d accounts with %d threads in %d ms (%.0f ops/s)%n", total, numAccounts, numThreads, elapsed / 1000000, total / (elapsed / 1e9));
+        System.out.println(ok ? "No lost updates." : "Lost updates detected!");
+
+        LoaderBenchmark.deleteAccountsFiles(fileName);
+
+        if (!ok) {System.exit(1);}
+
+    }
+
+}
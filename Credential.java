@@ -0,0 +1,147 @@
+import java.security.MessageDigest;
+import java.util.Base64;
+
+public final class Credential {
+
+    /*
+     * What is stored to check a PIN: the hash of the PIN computed once by a PinVerifier, never the PIN itself.
+     *
+     * Text form (one token, so it fits in the accounts file and the journal like the old encrypted PIN did):
+     *
+     *   [scheme]$[iterations]$[salt]$[hash]     salt and hash in Base64, e.g. pbkdf2$1000$q2x...$3vB...
+     *   [int]                                   a legacy PIN encrypted with Account.encryptPassword (files written before credentials)
+     *
+     * Credentials are immutable; changing a PIN replaces the credential of the account.
+     */
+
+    /** The scheme of the PINs encrypted with Account.encryptPassword (the hash holds the 4 bytes of the value) */
+    public static final String LEGACY = "legacy";
+
+    /** Separates the fields of the text form */
+    private static final char SEPARATOR = '$';
+
+    /** Stores the name of the hashing scheme (chosen by the PinVerifier that created it) */
+    private final String scheme;
+
+    /** Stores the number of iterations of the hash */
+    private final int iterations;
+
+    /** Stores the salt */
+    private final byte[] salt;
+
+    /** Stores the hash */
+    private final byte[] hash;
+
+    /**
+     * Constructor for the Credential class.
+     *
+     * @param scheme the name of the hashing scheme (no '$' nor whitespace)
+     * @param iterations the number of iterations of the hash
+     * @param salt the salt (not copied, it must not be changed afterwards)
+     * @param hash the hash (not copied, it must not be changed afterwards)
+     */
+    public Credential(String scheme, int iterations, byte[] salt, byte[] hash) {
+        this.scheme = scheme;
+        this.iterations = iterations;
+        this.salt = salt;
+        this.hash = hash;
+    }
+
+    /**
+     * Wraps a PIN encrypted with Account.encryptPassword, so it can be checked until it is migrated (see PinVerifier.migrate).
+     *
+     * @param encryptedPin the encrypted PIN
+     * @return the legacy credential
+     */
+    public static Credential legacy(int encryptedPin) {return new Credential(LEGACY, 0, new byte[0], intBytes(encryptedPin));}
+
+    /**
+     * Parses the text form of a credential.
+     *
+     * @param text a credential token, or an int for a legacy encrypted PIN
+     * @return the credential
+     * @throws IllegalArgumentException if the text is neither
+     */
+    public static Credential parse(String text) {
+
+        int first = text.indexOf(SEPARATOR);
+        if (first == -1) {return legacy(Integer.parseInt(text));}
+
+        int second = text.indexOf(SEPARATOR, first + 1);
+        int third = (second == -1) ? -1 : text.indexOf(SEPARATOR, second + 1);
+        if (third == -1 || text.indexOf(SEPARATOR, third + 1) != -1) {throw new IllegalArgumentException("Invalid credential: " + text);}
+
+        Base64.Decoder decoder = Base64.getDecoder();
+        return new Credential(text.substring(0, first), Integer.parseInt(text.substring(first + 1, second)),
+                decoder.decode(text.substring(second + 1, third)), decoder.decode(text.substring(third + 1)));
+
+    }
+
+    /**
+     * Retrieves the name of the hashing scheme.
+     *
+     * @return the scheme
+     */
+    public String scheme() {return scheme;}
+
+    /**
+     * Retrieves the number of iterations of the hash.
+     *
+     * @return the iterations
+     */
+    public int iterations() {return iterations;}
+
+    /**
+     * Retrieves the salt.
+     *
+     * @return the salt (shared, it must not be changed)
+     */
+    public byte[] salt() {return salt;}
+
+    /**
+     * Checks if the credential is a legacy encrypted PIN.
+     *
+     * @return true if its scheme is LEGACY
+     */
+    public boolean isLegacy() {return LEGACY.equals(scheme);}
+
+    /**
+     * Retrieves the legacy encrypted PIN.
+     *
+     * @return the value of Account.encryptPassword the credential wraps
+     * @throws IllegalStateException if the credential is not a legacy one
+     */
+    public int legacyValue() {
+        if (!isLegacy()) {throw new IllegalStateException("Not a legacy credential: " + scheme);}
+        return ((hash[0] & 0xFF) << 24) | ((hash[1] & 0xFF) << 16) | ((hash[2] & 0xFF) << 8) | (hash[3] & 0xFF);
+    }
+
+    /**
+     * Compares a computed hash with the stored one in constant time (the time does not depend on where they differ).
+     *
+     * @param computed the hash computed from the PIN typed
+     * @return true if they are equal
+     */
+    public boolean matches(byte[] computed) {return MessageDigest.isEqual(hash, computed);}
+
+    /**
+     * Converts an int to its 4 big-endian bytes.
+     *
+     * @param value the int
+     * @return the bytes
+     */
+    public static byte[] intBytes(int value) {return new byte[] {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};}
+
+    /**
+     * Formats the credential as one token (see the text form above).
+     *
+     * @return the token (the plain int for a legacy credential)
+     */
+    @Override
+    public String toString() {
+        if (isLegacy()) {return Integer.toString(legacyValue());}
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return scheme + SEPARATOR + iterations + SEPARATOR + encoder.encodeToString(salt) + SEPARATOR + encoder.encodeToString(hash);
+    }
+
+}
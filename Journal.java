@@ -0,0 +1,446 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+public class Journal {
+
+    /*
+     * Every line after the headline ends with " #[CRC32 of the rest of the line, in hex]", so a line cut short
+     * (the ATM stopped while writing it, e.g. "D 3 1234.5" instead of "D 3 1234.56") is found and dropped instead of replayed.
+     * Lines are flushed to the operating system as soon as they are written, so they survive the ATM stopping;
+     * they are not forced to the disk one by one (that would cost a disk write per transaction), so a crash of the machine
+     * may lose the last entries. A rewritten journal is forced to the disk before it replaces the old one.
+     */
+
+    /** The headline every journal file starts with, followed by the checksum of the snapshot it applies to */
+    private static final String HEADLINE = "AEBank-Journal-v2-SnapshotCRC:";
+
+    /** The headline of journals written before the lines had checksums (their lines are replayed as they are) */
+    private static final String LEGACY_HEADLINE = "AEBank-Journal-SnapshotCRC:";
+
+    /** Separates a line from its checksum */
+    private static final String CHECKSUM = " #";
+
+    /**
+     * Marks the snapshot written by ATM.flush before it replaces the accounts file: "M [snapshotCrc] [covered]".
+     * The first 'covered' entries of the journal are in that snapshot, so if the ATM stops before the journal is compacted,
+     * the next open replays only the entries after them.
+     */
+    private static final String MARKER = "M";
+
+    /** Stores the name of the journal file */
+    private final String fileName;
+
+    /** Stores the writer used to append entries (null until the journal is opened) */
+    private BufferedWriter writer;
+
+    /** Stores the number of entries appended since the last snapshot */
+    private int entries;
+
+    /** Stores the number of entry lines in the journal file (markers are not counted) */
+    private int lines;
+
+    /**
+     * Constructor for the Journal class.
+     *
+     * @param fileName the name of the journal file
+     */
+    public Journal(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Computes the CRC32 checksum of a file.
+     * It tells which snapshot a journal was started on.
+     *
+     * @param fileName the name of the file
+     * @return the checksum of the whole content of the file
+     * @throws IOException if the file cannot be read
+     */
+    protected static long checksum(String fileName) throws IOException {
+        CheckedInputStream in = new CheckedInputStream(new FileInputStream(fileName), new CRC32());
+        byte[] buffer = new byte[1 << 16];
+        while (in.read(buffer) != -1) {}
+        in.close();
+        return in.getChecksum().getValue();
+    }
+
+    /**
+     * Replays the journal on top of the accounts loaded from the snapshot, then opens it for appending.
+     *
+     * Entries are only replayed if the journal was started on the same snapshot (same checksum).
+     * If a marker of that snapshot is found instead (ATM.flush stopped between renaming the snapshot and compacting the journal),
+     * only the entries after the ones it covers are replayed, and the journal is compacted.
+     * Otherwise the snapshot already contains them (it was rewritten but the journal was not reset), so the journal is started over.
+     * A line that fails its checksum (e.g. a torn last line, the ATM stopped while writing it) is dropped, and the journal
+     * is rewritten without it.
+     *
+     * @param atm the ATM to apply the entries to
+     * @param snapshotCrc the checksum of the snapshot the accounts were loaded from
+     * @return the number of entries replayed
+     * @throws IOException if the journal cannot be read or written
+     */
+    protected int open(ATM atm, long snapshotCrc) throws IOException {
+
+        File fd = new File(fileName);
+        int replayed = 0;
+        boolean current = false;
+        List<String> entryLines = new ArrayList<>();
+        int from = -1;
+
+        if (fd.exists()) {
+
+            BufferedReader reader = new BufferedReader(new FileReader(fd));
+            String journalHeadline = reader.readLine();
+            boolean legacy = journalHeadline != null && journalHeadline.startsWith(LEGACY_HEADLINE);
+            current = journalHeadline != null && (journalHeadline.equals(HEADLINE + snapshotCrc) || journalHeadline.equals(LEGACY_HEADLINE + snapshotCrc));
+            if (current) {from = 0;}
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // A line cut short or changed is dropped, so it can neither be replayed nor move a marker
+                line = legacy ? line : unseal(line);
+                if (line == null) {continue;}
+                if (!isMarker(line)) {
+                    entryLines.add(line);
+                } else if (!current) {
+                    // The last marker of the snapshot wins (a flush that stopped earlier may have left another one)
+                    String[] fields = line.split(" ");
+                    if (fields.length == 3 && fields[1].equals(Long.toString(snapshotCrc))) {from = Integer.parseInt(fields[2]);}
+                }
+            }
+
+            reader.close();
+
+        }
+
+        // Lines dropped above are not counted, but a torn line can only be the last one written, after every marker
+        from = Math.min(from, entryLines.size());
+        if (from >= 0) {
+            for (int i = from; i < entryLines.size(); i++) {
+                if (replay(atm, entryLines.get(i))) {replayed++;}
+            }
+        }
+
+        if (from >= 0 && !current) {
+            rewrite(snapshotCrc, entryLines.subList(from, entryLines.size()));
+        } else if (replayed == 0) {
+            reset(snapshotCrc);
+        } else {
+            // Rewritten with checksums and without the dropped lines, so the line count matches the file again
+            rewrite(snapshotCrc, entryLines);
+            entries = replayed;
+        }
+
+        return replayed;
+
+    }
+
+    /**
+     * Checks if a line of the journal is a marker (see MARKER) rather than an entry.
+     *
+     * @param line the line
+     * @return true if it is a marker
+     */
+    private static boolean isMarker(String line) {return line.startsWith(MARKER + " ");}
+
+    /**
+     * Adds the checksum of a line to its end (see CHECKSUM).
+     *
+     * @param line the line, without its checksum
+     * @return the line followed by its checksum
+     */
+    private static String seal(CharSequence line) {
+        String text = line.toString();
+        CRC32 crc = new CRC32();
+        crc.update(text.getBytes(Charset.defaultCharset()));
+        return text + CHECKSUM + Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * Checks the checksum at the end of a line and removes it.
+     *
+     * @param line the line read from the journal
+     * @return the line without its checksum (null if it has none or it does not match, e.g. the line was cut short)
+     */
+    private static String unseal(String line) {
+        int end = line.lastIndexOf(CHECKSUM);
+        if (end < 0) {return null;}
+        String text = line.substring(0, end);
+        return seal(text).equals(line) ? text : null;
+    }
+
+    /**
+     * Applies one journal entry to the ATM.
+     * Entries are "[letter] [accountNum] [arguments]"; the account number is kept across saves (see ATM.saveAccounts),
+     * so an entry always goes to the account it was recorded for, even if several accounts share its names.
+     *
+     * @param atm the ATM to apply the entry to
+     * @param line the journal entry
+     * @return true if the entry was applied, false if it is malformed or its account does not exist
+     */
+    private boolean replay(ATM atm, String line) {
+
+        String[] fields = line.split(" ");
+        if (fields.length < 2 || fields[0].length() != 1) {return false;}
+
+        try {
+
+            int accountNum = Integer.parseInt(fields[1]);
+
+            if (fields[0].charAt(0) == 'C') {
+                return atm.restoreAccount(accountNum, new Account(fields[2], fields[3], Credential.parse(fields[4]), 0L, new long[Integer.parseInt(fields[5])]));
+            }
+
+            if (accountNum < 0 || accountNum >= atm.maxAccounts()) {return false;}
+            Account user = atm.accounts(accountNum);
+            if (user == null) {return false;}
+
+            switch (fields[0].charAt(0)) {
+                case 'D':
+                    user.deposit(Money.parse(fields[2]));
+                    return true;
+                case 'W':
+                    user.withdraw(Money.parse(fields[2]));
+                    return true;
+                case 'S':
+                    user.setBalance(Money.parse(fields[2]));
+                    return true;
+                case 'P':
+                    user.setCredential(Credential.parse(fields[2]));
+                    return true;
+                case 'N':
+                    atm.renameAccount(accountNum, fields[2], fields[3]);
+                    return true;
+                case 'X':
+                    atm.deleteAccount(accountNum);
+                    return true;
+                default:
+                    return false;
+            }
+
+        } catch (RuntimeException Malformed) {
+            return false;
+        }
+
+    }
+
+    /**
+     * Truncates the journal after a new snapshot has been written.
+     *
+     * @param snapshotCrc the checksum of the new snapshot
+     * @throws IOException if the journal cannot be written
+     */
+    protected synchronized void reset(long snapshotCrc) throws IOException {
+        if (writer != null) {writer.close();}
+        writer = new BufferedWriter(new FileWriter(fileName, false));
+        writer.write(HEADLINE + snapshotCrc);
+        writer.flush();
+        entries = 0;
+        lines = 0;
+    }
+
+    /**
+     * Records that a snapshot covering the first entries of the journal was written, before it replaces the accounts file.
+     *
+     * @param snapshotCrc the checksum of the new snapshot
+     * @param covered the number of entries of the journal the snapshot contains (see lines)
+     * @throws IOException if the journal cannot be written
+     */
+    protected synchronized void mark(long snapshotCrc, int covered) throws IOException {
+        writer.write("\n" + seal(MARKER + " " + snapshotCrc + " " + covered));
+        writer.flush();
+    }
+
+    /**
+     * Starts the journal over on a new snapshot, keeping the entries appended after the ones the snapshot contains.
+     * Called once the snapshot has replaced the accounts file; the journal is rewritten to a temporary file and renamed,
+     * so it is never left half written.
+     *
+     * @param snapshotCrc the checksum of the new snapshot
+     * @param covered the number of entries of the journal the snapshot contains
+     * @throws IOException if the journal cannot be read or written
+     */
+    protected synchronized void compact(long snapshotCrc, int covered) throws IOException {
+
+        writer.close();
+
+        List<String> entryLines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new FileReader(fileName));
+        reader.readLine();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            // Every line of the open journal was written whole by this ATM (see open), so only the markers are left out
+            String entry = unseal(line);
+            if (entry != null && !isMarker(entry)) {entryLines.add(entry);}
+        }
+        reader.close();
+
+        rewrite(snapshotCrc, entryLines.subList(Math.min(covered, entryLines.size()), entryLines.size()));
+
+    }
+
+    /**
+     * Replaces the journal with a new one holding some entries, then opens it for appending.
+     * The new journal is forced to the disk before it is renamed over the old one.
+     *
+     * @param snapshotCrc the checksum of the snapshot the new journal applies to
+     * @param kept the entries of the new journal (without their checksums)
+     * @throws IOException if the journal cannot be written
+     */
+    private synchronized void rewrite(long snapshotCrc, List<String> kept) throws IOException {
+
+        Path tmp = Paths.get(fileName + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tmp.toFile(), false);
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(stream, Charset.defaultCharset()));
+        out.write(HEADLINE + snapshotCrc);
+        for (String entry : kept) {out.write("\n" + seal(entry));}
+        out.flush();
+        stream.getChannel().force(true);
+        out.close();
+
+        try {
+            Files.move(tmp, Paths.get(fileName), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, Paths.get(fileName), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        writer = new BufferedWriter(new FileWriter(fileName, true));
+        entries = kept.size();
+        lines = kept.size();
+
+    }
+
+    /**
+     * Retrieves the number of entries appended since the last snapshot.
+     *
+     * @return the number of entries in the journal
+     */
+    protected synchronized int entries() {return entries;}
+
+    /**
+     * Retrieves the number of entry lines in the journal file.
+     * Read while no entry can be appended (under the write lock of ATM.snapshotLock), it tells which entries a snapshot contains.
+     *
+     * @return the number of entry lines (markers are not counted)
+     */
+    protected synchronized int lines() {return lines;}
+
+    /**
+     * Appends one entry to the journal and flushes it, so it survives the ATM stopping right after (see the top of the class).
+     *
+     * @param op the letter of the operation
+     * @param account the account the operation was made on (recorded by its account number)
+     * @param args the arguments of the operation
+     */
+    private synchronized void append(char op, Account account, String args) {
+        try {
+            writer.write("\n" + seal(op + " " + account.accountNum() + args));
+            writer.flush();
+            entries++;
+            lines++;
+        } catch (IOException e) {
+            System.out.println("An error occurred.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Records that a new account was created.
+     *
+     * @param account the new account
+     */
+    protected void create(Account account) {append('C', account, " " + account.name() + " " + account.lastName() + " " + account.credential() + " " + account.depth());}
+
+    /**
+     * Records a deposit.
+     *
+     * @param account the account the amount was deposited in
+     * @param amount the amount deposited, in cents
+     */
+    protected void deposit(Account account, long amount) {append('D', account, " " + Money.toString(amount));}
+
+    /**
+     * Records a withdrawal.
+     *
+     * @param account the account the amount was withdrawn from
+     * @param amount the amount withdrawn, in cents
+     */
+    protected void withdraw(Account account, long amount) {append('W', account, " " + Money.toString(amount));}
+
+    /**
+     * Records a group of deposits and withdrawals with a single flush.
+     *
+     * @param account the account
+     * @param amounts the amounts in order, in cents (positive values are deposits, negative values are withdrawals)
+     * @param count the number of amounts to record
+     */
+    protected synchronized void transactions(Account account, long[] amounts, int count) {
+        try {
+            String accountNum = " " + account.accountNum() + " ";
+            StringBuilder entry = new StringBuilder(64);
+            for (int i = 0; i < count; i++) {
+                entry.setLength(0);
+                entry.append((amounts[i] >= 0) ? 'D' : 'W').append(accountNum);
+                writer.append('\n').append(seal(Money.append(entry, Math.abs(amounts[i]))));
+            }
+            writer.flush();
+            entries += count;
+            lines += count;
+        } catch (IOException e) {
+            System.out.println("An error occurred.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Records that an administrator set the balance of an account.
+     *
+     * @param account the account
+     * @param newBalance the new balance, in cents
+     */
+    protected void setBalance(Account account, long newBalance) {append('S', account, " " + Money.toString(newBalance));}
+
+    /**
+     * Records a PIN change.
+     *
+     * @param account the account (already holding the new credential)
+     */
+    protected void setPin(Account account) {append('P', account, " " + account.credential());}
+
+    /**
+     * Records that an account was renamed.
+     *
+     * @param account the account
+     * @param newName the new first name
+     * @param newLastName the new last name
+     */
+    protected void rename(Account account, String newName, String newLastName) {append('N', account, " " + newName + " " + newLastName);}
+
+    /**
+     * Records that an account was deleted.
+     *
+     * @param account the deleted account
+     */
+    protected void delete(Account account) {append('X', account, "");}
+
+}
@@ -0,0 +1,599 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Ledger {
+
+    /*
+     * Directory layout:
+     *
+     *   segment-000000, segment-000001, ...
+     *     Fixed-size entries (ENTRY_SIZE bytes), SEGMENT_ENTRIES per segment, appended in order.
+     *     Entry p (its position) is entry p % SEGMENT_ENTRIES of segment p / SEGMENT_ENTRIES:
+     *       [previous entry of the same account long] [timestamp long] [account id int] [type int] [amount long] [balance long]
+     *     Amounts are in cents.
+     *
+     *   index
+     *     Checkpoint written with every snapshot of the accounts:
+     *       AEBank-Ledger-Entries:[number of entries]
+     *       [account id] [position of its most recent entry] [account number]   (one line per account)
+     *
+     *   ids
+     *     Account ids assigned ('A id accountNum') and forgotten ('X id') since the checkpoint.
+     *
+     * Histories are kept by account number, which never changes (names do, and several accounts may share them).
+     * Each history has its own id, never given again, so an account created at the number of a deleted one starts a new history.
+     * The entries of an account are chained from the most recent to the oldest by their 'previous' field,
+     * so a page of the history of an account reads only the entries of that page.
+     * Entries written after the checkpoint are found again on open by scanning the segments from the checkpoint on.
+     */
+
+    /** The headline the index starts with, followed by the number of entries it covers */
+    private static final String HEADLINE = "AEBank-Ledger-Entries:";
+
+    /** The size of each entry in bytes */
+    private static final int ENTRY_SIZE = 40;
+
+    /** The number of entries of each segment file */
+    private static final int SEGMENT_ENTRIES = 1 << 18;
+
+    /** The number of entries buffered before they are written */
+    private static final int BUFFERED_ENTRIES = 256;
+
+    /** The number of segment files kept open for reading */
+    private static final int OPEN_SEGMENTS = 16;
+
+    /** The cursor of the most recent entry of an account (the first page) */
+    public static final long NEWEST = Long.MAX_VALUE;
+
+    /** The cursor after the oldest entry of an account (no more pages) */
+    public static final long END = -1;
+
+    /** Stores the directory of the ledger */
+    private final Path directory;
+
+    /** Stores the id of each account, by account number */
+    private final Map<Integer, Integer> ids = new HashMap<>();
+
+    /** Stores the account number of each account id (null once forgotten) */
+    private final List<Integer> keys = new ArrayList<>();
+
+    /** Stores the position of the most recent entry of each account id (END if it has none) */
+    private long[] heads = new long[64];
+
+    /** Stores the number of entries (written and buffered) */
+    private long end;
+
+    /** Stores the position of the first buffered entry */
+    private long bufferStart;
+
+    /** Stores the entries not written yet (off the heap) */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFERED_ENTRIES * ENTRY_SIZE);
+
+    /** Stores the buffer entries are read into */
+    private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+
+    /** Stores the segment file being appended to */
+    private FileChannel writer;
+
+    /** Stores the number of the segment file being appended to */
+    private long writerSegment = -1;
+
+    /** Stores the segment files open for reading, the least recently used first */
+    private final LinkedHashMap<Long, FileChannel> readers = new LinkedHashMap<>(OPEN_SEGMENTS, 0.75f, true);
+
+    /** Stores the writer of the ids file */
+    private BufferedWriter names;
+
+    /**
+     * Constructor for the Ledger class.
+     * Opens the ledger in the specified directory (it is created if needed) and finds the most recent entry of every account.
+     *
+     * @param directory the directory of the ledger
+     * @throws IOException if the ledger cannot be read or written
+     */
+    public Ledger(String directory) throws IOException {
+
+        this.directory = Paths.get(directory);
+        Files.createDirectories(this.directory);
+        Arrays.fill(heads, END);
+
+        long checkpoint = readIndex();
+        readIds();
+        end = findEnd();
+        scan(Math.min(checkpoint, end));
+        bufferStart = end;
+
+        names = new BufferedWriter(new FileWriter(this.directory.resolve("ids").toFile(), true));
+
+    }
+
+    /**
+     * Reads the index written by the last checkpoint.
+     *
+     * @return the number of entries the index covers (0 if there is no index)
+     * @throws IOException if the index cannot be read
+     */
+    private long readIndex() throws IOException {
+
+        Path index = directory.resolve("index");
+        if (!Files.exists(index)) {return 0;}
+
+        BufferedReader reader = new BufferedReader(new FileReader(index.toFile()));
+        String headline = reader.readLine();
+        long checkpoint = (headline != null && headline.startsWith(HEADLINE)) ? Long.parseLong(headline.substring(HEADLINE.length())) : 0;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split(" ");
+            if (fields.length != 3) {continue;}
+            int id = Integer.parseInt(fields[0]);
+            assign(id, Integer.parseInt(fields[2]));
+            heads[id] = Long.parseLong(fields[1]);
+        }
+
+        reader.close();
+
+        return checkpoint;
+
+    }
+
+    /**
+     * Applies the ids file (the ids assigned and forgotten since the checkpoint).
+     * A torn last line is ignored.
+     *
+     * @throws IOException if the ids file cannot be read
+     */
+    private void readIds() throws IOException {
+
+        Path idsFile = directory.resolve("ids");
+        if (!Files.exists(idsFile)) {return;}
+
+        BufferedReader reader = new BufferedReader(new FileReader(idsFile.toFile()));
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split(" ");
+            try {
+                if (fields[0].equals("A") && fields.length == 3) {assign(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));}
+                if (fields[0].equals("X") && fields.length == 2) {unassign(Integer.parseInt(fields[1]));}
+            } catch (NumberFormatException Malformed) {
+                // Torn line
+            }
+        }
+
+        reader.close();
+
+    }
+
+    /**
+     * Finds the number of entries in the segment files, dropping a torn entry at the end of the last one.
+     *
+     * @return the number of entries
+     * @throws IOException if the segments cannot be read
+     */
+    private long findEnd() throws IOException {
+
+        long segment = 0;
+        while (Files.exists(segmentPath(segment + 1))) {segment++;}
+        if (!Files.exists(segmentPath(segment))) {return 0;}
+
+        long size = Files.size(segmentPath(segment));
+        if (size % ENTRY_SIZE != 0) {
+            FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.WRITE);
+            channel.truncate(size - size % ENTRY_SIZE);
+            channel.close();
+        }
+
+        return segment * SEGMENT_ENTRIES + size / ENTRY_SIZE;
+
+    }
+
+    /**
+     * Reads the entries written after the checkpoint to update the most recent entry of their accounts.
+     *
+     * @param from the position of the first entry to read
+     * @throws IOException if the segments cannot be read
+     */
+    private void scan(long from) throws IOException {
+
+        ByteBuffer chunk = ByteBuffer.allocate(ENTRY_SIZE * 4096);
+
+        long pos = from;
+        while (pos < end) {
+
+            long segment = pos / SEGMENT_ENTRIES;
+            int count = (int) Math.min(Math.min(end - pos, SEGMENT_ENTRIES - pos % SEGMENT_ENTRIES), 4096);
+
+            chunk.clear().limit(count * ENTRY_SIZE);
+            readFully(reader(segment), chunk, (pos % SEGMENT_ENTRIES) * ENTRY_SIZE);
+
+            for (int i = 0; i < count; i++) {
+                int id = chunk.getInt(i * ENTRY_SIZE + 16);
+                growHeads(id);
+                heads[id] = pos + i;
+                while (keys.size() <= id) {keys.add(null);}
+            }
+
+            pos += count;
+
+        }
+
+    }
+
+    /**
+     * Records a transaction and writes it right away.
+     *
+     * @param accountNum the account number
+     * @param type the type of the transaction ('D', 'W' or 'S')
+     * @param amount the amount of the transaction in cents (the new balance for 'S')
+     * @param balance the balance right after the transaction, in cents
+     */
+    protected synchronized void record(int accountNum, char type, long amount, long balance) {
+        append(accountNum, type, amount, balance);
+        flush();
+    }
+
+    /**
+     * Records a transaction in the buffer (it is written by the next flush, or when the buffer is full).
+     *
+     * @param accountNum the account number
+     * @param type the type of the transaction ('D', 'W' or 'S')
+     * @param amount the amount of the transaction in cents (the new balance for 'S')
+     * @param balance the balance right after the transaction, in cents
+     */
+    protected synchronized void append(int accountNum, char type, long amount, long balance) {
+
+        int id = idOf(accountNum);
+
+        buffer.putLong(heads[id]).putLong(System.currentTimeMillis()).putInt(id).putInt(type).putLong(amount).putLong(balance);
+        heads[id] = end;
+        end++;
+
+        // A write never spans two segments
+        if (!buffer.hasRemaining() || end % SEGMENT_ENTRIES == 0) {flush();}
+
+    }
+
+    /**
+     * Writes the buffered entries to their segment.
+     */
+    protected synchronized void flush() {
+
+        if (bufferStart == end) {return;}
+
+        try {
+
+            long segment = bufferStart / SEGMENT_ENTRIES;
+            if (segment != writerSegment) {
+                if (writer != null) {writer.close();}
+                writer = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                writerSegment = segment;
+            }
+
+            buffer.flip();
+            long position = (bufferStart % SEGMENT_ENTRIES) * ENTRY_SIZE;
+            while (buffer.hasRemaining()) {position += writer.write(buffer, position);}
+            buffer.clear();
+            bufferStart = end;
+
+        } catch (IOException e) {
+            System.out.println("An error occurred.");
+            e.printStackTrace();
+        }
+
+    }
+
+    /**
+     * Forgets the history of a deleted account (a new account at the same account number starts a new history).
+     *
+     * @param accountNum the account number
+     */
+    protected synchronized void forget(int accountNum) {
+        Integer id = ids.get(accountNum);
+        if (id == null) {return;}
+        unassign(id);
+        logId("X " + id);
+    }
+
+    /**
+     * Writes the index with the most recent entry of every account and empties the ids file,
+     * so the next open does not scan the entries written so far.
+     * The index is written to index.tmp and atomically renamed.
+     */
+    protected synchronized void checkpoint() {
+
+        flush();
+
+        try {
+
+            if (writer != null) {writer.force(false);}
+
+            Path index = directory.resolve("index");
+            Path tmp = directory.resolve("index.tmp");
+
+            BufferedWriter indexWriter = new BufferedWriter(new FileWriter(tmp.toFile()), 1 << 16);
+            indexWriter.write(HEADLINE + end);
+            for (int id = 0; id < keys.size(); id++) {
+                if (keys.get(id) != null) {indexWriter.write("\n" + id + " " + heads[id] + " " + keys.get(id));}
+            }
+            indexWriter.close();
+
+            try {
+                Files.move(tmp, index, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            names.close();
+            names = new BufferedWriter(new FileWriter(directory.resolve("ids").toFile(), false));
+
+        } catch (IOException e) {
+            System.out.println("An error occurred.");
+            e.printStackTrace();
+        }
+
+    }
+
+    /**
+     * Retrieves a page of the history of an account, the most recent entries first.
+     *
+     * @param accountNum the account number
+     * @param cursor NEWEST for the first page, or the next() cursor of the previous page
+     * @param limit the maximum number of entries of the page
+     * @return the page (empty if the account has no history)
+     * @throws IOException if the entries cannot be read
+     * @throws IllegalArgumentException if the cursor is not an entry of the account
+     */
+    public synchronized LedgerPage page(int accountNum, long cursor, int limit) throws IOException {
+        return pageByTime(accountNum, Long.MIN_VALUE, Long.MAX_VALUE, cursor, limit);
+    }
+
+    /**
+     * Retrieves a page of the history of an account, skipping its most recent entries.
+     * Only the 'previous' field of the skipped entries is read.
+     *
+     * @param accountNum the account number
+     * @param offset the number of most recent entries to skip
+     * @param limit the maximum number of entries of the page
+     * @return the page (empty if the account has fewer entries than 'offset')
+     * @throws IOException if the entries cannot be read
+     */
+    public synchronized LedgerPage pageByOffset(int accountNum, long offset, int limit) throws IOException {
+
+        flush();
+
+        long pos = head(accountNum);
+        for (long skipped = 0; skipped < offset && pos != END; skipped++) {pos = readEntry(pos).getLong(0);}
+
+        return (pos == END) ? new LedgerPage(new ArrayList<>(), END) : page(accountNum, pos, limit);
+
+    }
+
+    /**
+     * Retrieves a page of the entries of an account made in a time range, the most recent first.
+     * Entries are appended in time order, so the walk stops at the first entry older than the range.
+     *
+     * @param accountNum the account number
+     * @param from the start of the range (milliseconds since the epoch, inclusive)
+     * @param to the end of the range (milliseconds since the epoch, exclusive)
+     * @param cursor NEWEST for the first page, or the next() cursor of the previous page
+     * @param limit the maximum number of entries of the page
+     * @return the page
+     * @throws IOException if the entries cannot be read
+     * @throws IllegalArgumentException if the cursor is not an entry of the account
+     */
+    public synchronized LedgerPage pageByTime(int accountNum, long from, long to, long cursor, int limit) throws IOException {
+
+        flush();
+
+        List<LedgerEntry> entries = new ArrayList<>(Math.min(limit, 1024));
+        long pos = (cursor == NEWEST) ? head(accountNum) : cursor;
+
+        // A cursor comes from the caller, so it must point to an entry of this account (the entries it chains to are then too)
+        if (cursor != NEWEST && cursor != END) {
+            Integer id = ids.get(accountNum);
+            if (id == null || cursor < 0 || cursor >= end || readEntry(cursor).getInt(16) != id) {
+                throw new IllegalArgumentException("The cursor is not an entry of account " + accountNum + ": " + cursor);
+            }
+        }
+
+        while (pos != END && entries.size() < limit) {
+
+            ByteBuffer read = readEntry(pos);
+            long timestamp = read.getLong(8);
+
+            if (timestamp < from) {
+                pos = END;
+            } else {
+                if (timestamp < to) {
+                    entries.add(readEntry(read, timestamp));
+                }
+                pos = read.getLong(0);
+            }
+
+        }
+
+        return new LedgerPage(entries, pos);
+
+    }
+
+    /**
+     * Writes the buffered entries and closes the ledger files.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void close() throws IOException {
+        flush();
+        if (writer != null) {writer.close();}
+        for (FileChannel channel : readers.values()) {channel.close();}
+        readers.clear();
+        names.close();
+    }
+
+    /**
+     * Finds the most recent entry of an account.
+     *
+     * @param accountNum the account number
+     * @return the position of the entry (END if the account has no history)
+     */
+    private long head(int accountNum) {
+        Integer id = ids.get(accountNum);
+        return (id == null) ? END : heads[id];
+    }
+
+    /**
+     * Finds the id of an account, assigning a new one (and recording it in the ids file) the first time.
+     *
+     * @param accountNum the account number
+     * @return the id of the account
+     */
+    private int idOf(int accountNum) {
+        Integer id = ids.get(accountNum);
+        if (id != null) {return id;}
+        int newId = keys.size();
+        assign(newId, accountNum);
+        logId("A " + newId + " " + accountNum);
+        return newId;
+    }
+
+    /**
+     * Gives an id to an account number (the old account number of the id is dropped).
+     *
+     * @param id the account id
+     * @param key the account number
+     */
+    private void assign(int id, Integer key) {
+        while (keys.size() <= id) {keys.add(null);}
+        growHeads(id);
+        if (keys.get(id) != null) {ids.remove(keys.get(id), id);}
+        keys.set(id, key);
+        ids.put(key, id);
+    }
+
+    /**
+     * Drops the key of an id (the id is never given again).
+     *
+     * @param id the account id
+     */
+    private void unassign(int id) {
+        if (id >= keys.size() || keys.get(id) == null) {return;}
+        ids.remove(keys.get(id), id);
+        keys.set(id, null);
+    }
+
+    /**
+     * Appends a line to the ids file and flushes it.
+     *
+     * @param line the line
+     */
+    private void logId(String line) {
+        try {
+            names.write(line + "\n");
+            names.flush();
+        } catch (IOException e) {
+            System.out.println("An error occurred.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Makes room in 'heads' for an id.
+     *
+     * @param id the account id
+     */
+    private void growHeads(int id) {
+        if (id < heads.length) {return;}
+        int oldLength = heads.length;
+        heads = Arrays.copyOf(heads, Math.max(id + 1, oldLength * 2));
+        Arrays.fill(heads, oldLength, heads.length, END);
+    }
+
+    /**
+     * Converts an entry read into a LedgerEntry.
+     *
+     * @param read the buffer holding the entry
+     * @param timestamp the timestamp of the entry
+     * @return the entry
+     */
+    private static LedgerEntry readEntry(ByteBuffer read, long timestamp) {
+        return new LedgerEntry(timestamp, (char) read.getInt(20), read.getLong(24), read.getLong(32));
+    }
+
+    /**
+     * Reads one entry.
+     *
+     * @param pos the position of the entry
+     * @return a buffer holding the entry (reused by the next read)
+     * @throws IOException if the entry cannot be read
+     */
+    private ByteBuffer readEntry(long pos) throws IOException {
+        entry.clear();
+        readFully(reader(pos / SEGMENT_ENTRIES), entry, (pos % SEGMENT_ENTRIES) * ENTRY_SIZE);
+        return entry;
+    }
+
+    /**
+     * Retrieves a segment file open for reading, closing the least recently used one if too many are open.
+     *
+     * @param segment the number of the segment
+     * @return the channel of the segment
+     * @throws IOException if the segment cannot be opened
+     */
+    private FileChannel reader(long segment) throws IOException {
+        FileChannel channel = readers.get(segment);
+        if (channel == null) {
+            if (readers.size() == OPEN_SEGMENTS) {
+                Map.Entry<Long, FileChannel> eldest = readers.entrySet().iterator().next();
+                eldest.getValue().close();
+                readers.remove(eldest.getKey());
+            }
+            channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ);
+            readers.put(segment, channel);
+        }
+        return channel;
+    }
+
+    /**
+     * Reads from a channel until the buffer is full.
+     *
+     * @param channel the channel
+     * @param buffer the buffer
+     * @param position the position in the channel
+     * @throws IOException if the channel ends first
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read == -1) {throw new IOException("Unexpected end of ledger segment");}
+            position += read;
+        }
+    }
+
+    /**
+     * Finds the path of a segment file.
+     *
+     * @param segment the number of the segment
+     * @return the path of the segment
+     */
+    private Path segmentPath(long segment) {return directory.resolve(String.format("segment-%06d", segment));}
+
+}
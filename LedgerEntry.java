@@ -0,0 +1,66 @@
+public class LedgerEntry {
+
+    /** The time of the transaction (milliseconds since the epoch) */
+    private final long timestamp;
+
+    /** The type of the transaction ('D'eposit, 'W'ithdrawal or balance 'S'et by an administrator) */
+    private final char type;
+
+    /** The amount of the transaction in cents (the new balance for 'S') */
+    private final long amount;
+
+    /** The balance of the account right after the transaction, in cents */
+    private final long balance;
+
+    /**
+     * Constructor for the LedgerEntry class.
+     *
+     * @param timestamp the time of the transaction
+     * @param type the type of the transaction
+     * @param amount the amount of the transaction, in cents
+     * @param balance the balance right after the transaction, in cents
+     */
+    public LedgerEntry(long timestamp, char type, long amount, long balance) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.amount = amount;
+        this.balance = balance;
+    }
+
+    /**
+     * Retrieves the time of the transaction.
+     *
+     * @return the milliseconds since the epoch
+     */
+    public long timestamp() {return timestamp;}
+
+    /**
+     * Retrieves the type of the transaction.
+     *
+     * @return 'D' for deposits, 'W' for withdrawals and 'S' for balances set by an administrator
+     */
+    public char type() {return type;}
+
+    /**
+     * Retrieves the amount of the transaction.
+     *
+     * @return the amount in cents (the new balance for 'S')
+     */
+    public long amount() {return amount;}
+
+    /**
+     * Retrieves the balance of the account right after the transaction.
+     *
+     * @return the balance, in cents
+     */
+    public long balance() {return balance;}
+
+    /**
+     * Formats the entry for display.
+     *
+     * @return the time, type, amount and balance of the entry
+     */
+    @Override
+    public String toString() {return java.time.Instant.ofEpochMilli(timestamp) + " " + type + " " + Money.toString(amount) + " (balance " + Money.toString(balance) + ")";}
+
+}
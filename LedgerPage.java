@@ -0,0 +1,43 @@
+import java.util.List;
+
+public class LedgerPage {
+
+    /** Stores the entries of the page, the most recent first */
+    private final List<LedgerEntry> entries;
+
+    /** Stores the cursor of the next page (Ledger.END if there is none) */
+    private final long next;
+
+    /**
+     * Constructor for the LedgerPage class.
+     *
+     * @param entries the entries of the page, the most recent first
+     * @param next the cursor of the next page (Ledger.END if there is none)
+     */
+    public LedgerPage(List<LedgerEntry> entries, long next) {
+        this.entries = entries;
+        this.next = next;
+    }
+
+    /**
+     * Retrieves the entries of the page.
+     *
+     * @return the entries, the most recent first
+     */
+    public List<LedgerEntry> entries() {return entries;}
+
+    /**
+     * Retrieves the cursor to pass to the ledger to get the next (older) page.
+     *
+     * @return the cursor of the next page (Ledger.END if there is none)
+     */
+    public long next() {return next;}
+
+    /**
+     * Checks if there are older entries after this page.
+     *
+     * @return true if the next page may hold entries
+     */
+    public boolean hasNext() {return next != Ledger.END;}
+
+}
@@ -0,0 +1,169 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.BufferedWriter;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.stream.Stream;
+
+public class LoaderBenchmark {
+
+    /** The headline every accounts file starts with */
+    private static final String HEADLINE = "AEBank-AccountsFileIsValid-MaxAccounts:";
+
+    /**
+     * Writes an accounts file with the specified number of random accounts.
+     * The credentials are hashed with a single iteration and each PIN is hashed once, so writing millions of accounts stays fast
+     * (they still verify with the default PinVerifier, which upgrades them on login).
+     *
+     * @param fileName the name of the file to write
+     * @param numAccounts the number of accounts to write
+     * @throws IOException if an I/O error occurs while writing to the file
+     */
+    protected static void writeAccountsFile(String fileName, int numAccounts) throws IOException {
+
+        Random random = new Random(212);
+        PinVerifier fileVerifier = new Pbkdf2PinVerifier(1);
+        Credential[] credentials = new Credential[10000];
+
+        BufferedWriter bw = new BufferedWriter(new FileWriter(fileName), 1 << 16);
+
+        bw.write(HEADLINE + numAccounts);
+        for (int i = 0; i < numAccounts; i++) {
+            long[] last5Transactions = new long[5];
+            for (int t = 0; t < 5; t++) {last5Transactions[t] = Math.round((random.nextDouble() - 0.5) * 100000);}
+            int pin = 2 + random.nextInt(9998);
+            if (credentials[pin] == null) {credentials[pin] = fileVerifier.create(pin);}
+            Account account = new Account("Name" + i, "LastName" + i, credentials[pin], Math.round(random.nextDouble() * 10000000), last5Transactions);
+            bw.write("\n" + account.toFile());
+        }
+
+        bw.close();
+
+    }
+
+    /**
+     * Deletes an accounts file and everything an ATM keeps next to it:
+     * the journal, the ledger directory ([fileName].ledger) and the temporary files of a save.
+     * The tools call it when they are done, so no file is left behind in the temporary directory.
+     *
+     * @param fileName the name of the accounts file
+     * @throws IOException if a file cannot be deleted
+     */
+    protected static void deleteAccountsFiles(String fileName) throws IOException {
+
+        for (String suffix : new String[] {"", ".tmp", ".next", ".next.tmp", ".journal", ".journal.tmp"}) {
+            Files.deleteIfExists(Paths.get(fileName + suffix));
+        }
+
+        Path ledger = Paths.get(fileName + ".ledger");
+        if (Files.isDirectory(ledger)) {
+            // The files first, then the directory
+            try (Stream<Path> files = Files.walk(ledger)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {Files.deleteIfExists(file);}
+            }
+        }
+
+    }
+
+    /**
+     * Loads an accounts file the way ATM.getAccounts did before the buffered loader (token by token with a Scanner).
+     *
+     * @param fileName the name of the file to read
+     * @return the loaded accounts
+     * @throws IOException if the file cannot be read
+     */
+    protected static Account[] loadWithScanner(String fileName) throws IOException {
+
+        Scanner fileReader = new Scanner(new File(fileName));
+
+        String fileHeadline = fileReader.nextLine();
+        int maxAccounts = Integer.parseInt(fileHeadline.substring(HEADLINE.length()));
+        Account[] accounts = new Account[maxAccounts];
+
+        long[] last5Transactions = new long[5];
+        int i = 0;
+
+        while (i < maxAccounts && fileReader.hasNextLine()) {
+            String name = fileReader.next();
+            String lastName = fileReader.next();
+            Credential credential = Credential.parse(fileReader.next());
+            long balance = Money.fromDouble(fileReader.nextDouble());
+            for (int t = 0; t < 5; t++) {last5Transactions[t] = Money.fromDouble(fileReader.nextDouble());}
+            accounts[i] = new Account(name, lastName, credential, balance, Arrays.copyOf(last5Transactions, 5));
+            i++;
+        }
+
+        fileReader.close();
+
+        return accounts;
+
+    }
+
+    /**
+     * Compares the startup time of the Scanner loader and the buffered and parallel loaders of ATM.
+     *
+     * Usage: java LoaderBenchmark [numAccounts] [rounds]
+     *
+     * @param args the number of accounts to generate (default 1000000) and the number of timed rounds (default 3)
+     */
+    public static void main(String[] args) throws IOException {
+
+        int numAccounts = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+
+        File fd = File.createTempFile("LoaderBenchmark", ".txt");
+        String fileName = fd.getPath();
+
+        writeAccountsFile(fileName, numAccounts);
+        System.out.println("Accounts: " + numAccounts + " (" + (fd.length() / 1024) + " KiB)");
+
+        try {runRounds(fileName, numAccounts, rounds);} finally {deleteAccountsFiles(fileName);}
+
+    }
+
+    /**
+     * Times every loader on the same accounts file.
+     *
+     * @param fileName the name of the accounts file
+     * @param numAccounts the number of accounts of the file
+     * @param rounds the number of timed rounds
+     * @throws IOException if the file cannot be read
+     */
+    private static void runRounds(String fileName, int numAccounts, int rounds) throws IOException {
+
+        for (int round = 1; round <= rounds; round++) {
+
+            long start = System.nanoTime();
+            Account[] scanned = loadWithScanner(fileName);
+            long scannerTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ATM atm = new ATM(fileName);
+            long bufferedTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ATM parallelAtm = new ATM(fileName, true);
+            long parallelTime = System.nanoTime() - start;
+
+            // Every loader has to agree on the accounts and their order
+            for (int i = 0; i < numAccounts; i += Math.max(1, numAccounts / 1000)) {
+                assert scanned[i].toFile().equals(atm.accounts(i).toFile());
+                assert scanned[i].toFile().equals(parallelAtm.accounts(i).toFile());
+            }
+
+            System.out.printf("Round %d: Scanner %d ms, buffered %d ms (%.1fx), parallel %d ms (%.1fx)%n", round, scannerTime / 1000000,
+                    bufferedTime / 1000000, (double) scannerTime / bufferedTime, parallelTime / 1000000, (double) scannerTime / parallelTime);
+
+        }
+
+    }
+
+}
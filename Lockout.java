@@ -0,0 +1,83 @@
+public class Lockout {
+
+    /*
+     * The failed PIN attempts of an account, packed in one long so they are updated with a single compare-and-set:
+     *
+     *   [failures: high 16 bits] [time of the last failure in milliseconds: low 48 bits]
+     *
+     * FREE_FAILURES failures in a row are allowed (typos); each failure after them locks the account for BASE_MILLIS,
+     * doubling up to MAX_MILLIS, so guessing the ten thousand PINs of one account takes months.
+     * One failure is forgotten every DECAY_MILLIS without failures, so a user who mistyped is soon back to the free attempts
+     * and nobody has to unblock the account.
+     * A state of 0 means no failures.
+     */
+
+    /** The number of failures in a row that do not lock the account */
+    public static final int FREE_FAILURES = 3;
+
+    /** The lockout after the first failure past the free ones, in milliseconds */
+    public static final long BASE_MILLIS = 30_000L;
+
+    /** The longest lockout, in milliseconds */
+    public static final long MAX_MILLIS = 3_600_000L;
+
+    /** The time after which one failure is forgotten, in milliseconds */
+    public static final long DECAY_MILLIS = 900_000L;
+
+    /** The number of bits of the time of the last failure */
+    private static final int TIME_BITS = 48;
+
+    /** Masks the time of the last failure */
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+
+    /** The largest number of failures that is counted */
+    private static final int MAX_FAILURES = 0xFFFF;
+
+    /**
+     * Retrieves the number of failures recorded in a state (without the decay).
+     *
+     * @param state the state
+     * @return the number of failures
+     */
+    public static int failures(long state) {return (int) (state >>> TIME_BITS);}
+
+    /**
+     * Retrieves the number of failures that still count at a time (one is forgotten every DECAY_MILLIS).
+     *
+     * @param state the state
+     * @param now the current time in milliseconds
+     * @return the number of failures
+     */
+    public static int failures(long state, long now) {
+        long forgotten = Math.max(0, now - (state & TIME_MASK)) / DECAY_MILLIS;
+        return (int) Math.max(0, failures(state) - forgotten);
+    }
+
+    /**
+     * Computes how long an account stays locked.
+     *
+     * @param state the state
+     * @param now the current time in milliseconds
+     * @return the milliseconds left before the next attempt is allowed (0 if it is allowed now)
+     */
+    public static long lockedFor(long state, long now) {
+        int failures = failures(state);
+        if (failures < FREE_FAILURES) {return 0;}
+        int doublings = Math.min(failures - FREE_FAILURES, 32);
+        long duration = Math.min(MAX_MILLIS, BASE_MILLIS << doublings);
+        return Math.max(0, (state & TIME_MASK) + duration - now);
+    }
+
+    /**
+     * Computes the state after one more failure.
+     *
+     * @param state the state
+     * @param now the current time in milliseconds
+     * @return the new state
+     */
+    public static long failed(long state, long now) {
+        long failures = Math.min(MAX_FAILURES, failures(state, now) + 1);
+        return (failures << TIME_BITS) | (now & TIME_MASK);
+    }
+
+}
@@ -0,0 +1,172 @@
+import java.io.File;
+import java.io.IOException;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LoginBenchmark {
+
+    /**
+     * Measures how many logins per second the PIN verifier sustains when many sessions log in at once,
+     * so the login cost under peak load can be predicted (and the iterations of Pbkdf2PinVerifier chosen from it).
+     * Every thread verifies the PIN of its own account (different salts) for the given time, with 1, 2, 4, ... threads
+     * up to the number of processors (and one round with twice as many threads, which should not go faster).
+     * Then a credential stuffing round is run against an ATM (see stuffing).
+     *
+     * Usage: java LoginBenchmark [iterations] [seconds] [accounts]
+     *
+     * @param args the iterations of the PBKDF2 hash (default Pbkdf2PinVerifier.DEFAULT_ITERATIONS),
+     *             the seconds each round is measured for (default 2) and the accounts of the stuffing round (default 10000)
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : Pbkdf2PinVerifier.DEFAULT_ITERATIONS;
+        double seconds = (args.length > 1) ? Double.parseDouble(args[1]) : 2.0;
+        int numAccounts = (args.length > 2) ? Integer.parseInt(args[2]) : 10000;
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        PinVerifier verifier = new Pbkdf2PinVerifier(iterations);
+        System.out.println("PBKDF2 iterations: " + iterations + ", processors: " + processors);
+        System.out.printf("%8s %14s %14s %12s%n", "Threads", "logins/s", "per thread/s", "ms/login");
+
+        // Warming up the hash for a second first, so the first round is not measuring the JIT
+        Credential warmup = verifier.create(1234);
+        long warmupEnd = System.nanoTime() + 1_000_000_000L;
+        while (System.nanoTime() < warmupEnd) {verifier.verify(warmup, 1234);}
+
+        for (int numThreads = 1; numThreads <= 2 * processors; numThreads = nextThreadCount(numThreads, processors)) {
+
+            Credential[] credentials = new Credential[numThreads];
+            for (int t = 0; t < numThreads; t++) {credentials[t] = verifier.create(1000 + t);}
+
+            LongAdder logins = new LongAdder();
+            AtomicBoolean stop = new AtomicBoolean(false);
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[numThreads];
+
+            for (int t = 0; t < numThreads; t++) {
+                final int pin = 1000 + t;
+                final Credential credential = credentials[t];
+                threads[t] = new Thread(() -> {
+                    try {start.await();} catch (InterruptedException e) {return;}
+                    while (!stop.get()) {
+                        if (!verifier.verify(credential, pin)) {throw new IllegalStateException("PIN not verified");}
+                        logins.increment();
+                    }
+                });
+                threads[t].start();
+            }
+
+            long startTime = System.nanoTime();
+            start.countDown();
+            Thread.sleep((long) (seconds * 1000));
+            stop.set(true);
+            for (Thread thread : threads) {thread.join();}
+            double elapsed = (System.nanoTime() - startTime) / 1e9;
+
+            double perSecond = logins.sum() / elapsed;
+            System.out.printf("%8d %14.0f %14.0f %12.3f%n", numThreads, perSecond, perSecond / numThreads, 1000.0 * numThreads / perSecond);
+
+        }
+
+        stuffing(verifier, 2 * processors, seconds, numAccounts);
+
+    }
+
+    /**
+     * Runs a credential stuffing attack on an ATM: many threads try random PINs on random accounts through ATM.login,
+     * while one user keeps logging in to their own account with the right PIN.
+     * The PINs actually hashed are counted, to check that the login limiter and the lockouts keep their cost bounded.
+     *
+     * @param verifier the verifier of the PINs
+     * @param numThreads the number of attacking threads
+     * @param seconds the seconds the attack lasts
+     * @param numAccounts the number of accounts of the ATM
+     * @throws IOException if the accounts file cannot be written
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static void stuffing(PinVerifier verifier, int numThreads, double seconds, int numAccounts) throws IOException, InterruptedException {
+
+        File fd = File.createTempFile("LoginBenchmark", ".txt");
+
+        LoaderBenchmark.writeAccountsFile(fd.getPath(), numAccounts);
+        ATM atm = new ATM(fd.getPath());
+
+        // Every account gets a credential of the benchmarked cost (the file has cheap ones); the user's account is number 0
+        Credential credential = verifier.create(1234);
+        for (int i = 0; i < numAccounts; i++) {atm.accounts(i).setCredential(credential);}
+
+        LongAdder hashes = new LongAdder();
+        Account.setPinVerifier(new PinVerifier() {
+            public Credential create(int pin) {return verifier.create(pin);}
+            public Credential migrate(Credential legacy) {return verifier.migrate(legacy);}
+            public boolean needsUpgrade(Credential stored) {return verifier.needsUpgrade(stored);}
+            public boolean verify(Credential stored, int pin) {
+                hashes.increment();
+                return verifier.verify(stored, pin);
+            }
+        });
+
+        LongAdder attempts = new LongAdder();
+        LongAdder userAttempts = new LongAdder();
+        LongAdder userLogins = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean(false);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[numThreads + 1];
+
+        for (int t = 0; t < numThreads; t++) {
+            final Random random = new Random(t);
+            threads[t] = new Thread(() -> {
+                try {start.await();} catch (InterruptedException e) {return;}
+                while (!stop.get()) {
+                    // Never the right PIN, so every account attacked ends up locked
+                    atm.login(atm.accounts(1 + random.nextInt(numAccounts - 1)), 2000 + random.nextInt(8000));
+                    attempts.increment();
+                }
+            });
+        }
+        threads[numThreads] = new Thread(() -> {
+            try {start.await();} catch (InterruptedException e) {return;}
+            while (!stop.get()) {
+                if (atm.login(atm.accounts(0), 1234) == null) {userLogins.increment();}
+                userAttempts.increment();
+                try {Thread.sleep(10);} catch (InterruptedException e) {return;}
+            }
+        });
+        for (Thread thread : threads) {thread.start();}
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        Thread.sleep((long) (seconds * 1000));
+        stop.set(true);
+        for (Thread thread : threads) {thread.join();}
+        double elapsed = (System.nanoTime() - startTime) / 1e9;
+
+        int locked = 0;
+        for (int i = 0; i < numAccounts; i++) {
+            if (atm.accounts(i).lockedFor() > 0) {locked++;}
+        }
+
+        System.out.printf("Stuffing with %d threads on %d accounts: %.0f attempts/s, %.0f PINs hashed/s, %d accounts locked%n",
+                numThreads, numAccounts, attempts.sum() / elapsed, hashes.sum() / elapsed, locked);
+        System.out.printf("The user logged in %d times out of %d%n", userLogins.sum(), userAttempts.sum());
+
+        Account.setPinVerifier(verifier);
+        LoaderBenchmark.deleteAccountsFiles(fd.getPath());
+
+    }
+
+    /**
+     * Finds the number of threads of the next round: doubling, but stopping at the number of processors on the way.
+     *
+     * @param numThreads the number of threads of this round
+     * @param processors the number of processors
+     * @return the number of threads of the next round
+     */
+    private static int nextThreadCount(int numThreads, int processors) {
+        return (numThreads < processors) ? Math.min(2 * numThreads, processors) : 2 * numThreads;
+    }
+
+}
@@ -0,0 +1,68 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LoginRateLimiter {
+
+    /*
+     * A token bucket holding up to 'burst' login attempts and refilled with 'rate' attempts per second,
+     * shared by every session of an ATM so a flood of attempts cannot use more than 'rate' PIN hashes per second.
+     *
+     * The bucket is kept as a single number, the time (System.nanoTime) at which it will be full again:
+     * taking a token pushes that time 1/rate seconds later, and a token can be taken while it is less than
+     * 'burst' tokens ahead of now. So taking a token is one compare-and-set, with no lock and no refill thread.
+     */
+
+    /** Stores the nanoseconds it takes to refill one token */
+    private final long interval;
+
+    /** Stores how far ahead of now the full time can be (the nanoseconds to refill 'burst' tokens) */
+    private final long capacity;
+
+    /** Stores the time at which the bucket is full again */
+    private final AtomicLong fullAt;
+
+    /**
+     * Constructor for the LoginRateLimiter class.
+     * The bucket starts full.
+     *
+     * @param rate the number of attempts allowed per second, on average
+     * @param burst the number of attempts allowed at once
+     * @throws IllegalArgumentException if the rate is not positive or the burst is less than 1
+     */
+    public LoginRateLimiter(double rate, int burst) {
+
+        if (!(rate > 0)) {throw new IllegalArgumentException("The rate must be positive: " + rate);}
+        if (burst < 1) {throw new IllegalArgumentException("The burst must be at least 1: " + burst);}
+
+        this.interval = Math.max(1, (long) (1e9 / rate));
+        this.capacity = interval * burst;
+        this.fullAt = new AtomicLong(System.nanoTime());
+
+    }
+
+    /**
+     * Takes a token if there is one.
+     *
+     * @return true if the attempt is allowed, false if the bucket is empty
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            // A bucket that filled up long ago is just full (nanoTime values are compared by difference)
+            long next = ((current - now < 0) ? now : current) + interval;
+            if (next - now > capacity) {return false;}
+            if (fullAt.compareAndSet(current, next)) {return true;}
+        }
+    }
+
+    /**
+     * Computes the number of tokens left.
+     *
+     * @return the number of attempts allowed right now
+     */
+    public long available() {
+        long ahead = fullAt.get() - System.nanoTime();
+        return (ahead <= 0) ? capacity / interval : (capacity - ahead) / interval;
+    }
+
+}
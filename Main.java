@@ -1,37 +1,44 @@
-import java.util.Scanner;
-
 public class Main {
 
+    /** The headline of the ATM, built once and printed in one piece */
+    private static final String HEADLINE =
+            "------------------------------ $ ------------------------------\n" +
+            "                          AE Bank ATM                          \n" +
+            "------------------------------ $ ------------------------------\n" +
+            "\n";
+
+    /** The new lines that scroll the previous user's screen away */
+    private static final String CLEAR_SCREEN = "\n".repeat(80);
+
     /**
-     * Prompts the user to input a positive number and validates the input.
+     * Prompts the user to input a positive amount of money and validates the input.
      *
      * @param prompt the prompt message to display to the user
-     * @return the positive number input by the user
+     * @param terminal the terminal of the user
+     * @return the positive amount input by the user, in cents (see Money)
      */
-    public static double getPositiveNum(String prompt) {
-
-        Scanner input = new Scanner(System.in);
+    public static long getPositiveAmount(String prompt, Terminal terminal) {
 
         // Initializing variables
-        double num = -1.0;
-        String numStr;
+        long num = 0;
+        CharSequence numStr;
         boolean invalid;
 
         // Prompt again while input is invalid
-        while (num <= 0.0) {
+        while (num <= 0) {
 
             // [Re]setting invalid to true
             invalid = true;
 
             while (invalid) {
                 // Prompting user
-                System.out.println(prompt);
+                terminal.println(prompt);
                 // Getting input
-                numStr = input.next();
+                numStr = terminal.nextToken();
                 // Trying to convert input
-                try {num = Double.parseDouble(numStr); invalid = false;}
-                // If the conversion fails then the input is invalid and the user is prompted again
-                catch(Exception NotADouble) {invalid = true;}
+                try {num = Money.parse(numStr); invalid = false;}
+                // If the conversion fails (or the amount is too large) then the input is invalid and the user is prompted again
+                catch(RuntimeException NotAnAmount) {invalid = true;}
             }
         }
         // Returning input
@@ -42,40 +49,25 @@ public class Main {
      * Prompts the user whether they want to create a new account for the specified name.
      *
      * @param name the name for which the new account is being created
+     * @param terminal the terminal of the user
      * @return 'Y' if the user wants to create a new account, 'N' otherwise
      */
-    public static char wantNewAccount(String name) {
-
-        Scanner input = new Scanner(System.in);
-
-        // Creating list of options for user input
-        char[] options = {'Y', 'N'};
+    public static char wantNewAccount(String name, Terminal terminal) {
 
         // Outputting options to the user
-        System.out.println("Do you want to create a new one " + name + "?");
-
-        // Initializing variables
-        char choice;
-        boolean validInput = true;
+        terminal.print("Do you want to create a new one ").print(name).println("?");
 
         // Turning input to char type
-        choice = input.next().toUpperCase().charAt(0);
-
-        // Checking input
-        for(int i = 0; i < options.length; i++) {validInput = validInput && (choice != options[i]);}
+        char choice = terminal.nextOption();
 
         // Prompt again while input is invalid
-        while (validInput) {
+        while (choice != 'Y' && choice != 'N') {
 
             // Prompting the user again
-            System.out.println("Do you want to create a new one " + name + "?");
+            terminal.print("Do you want to create a new one ").print(name).println("?");
 
             // Turning input to char type
-            choice = input.next().toUpperCase().charAt(0);
-
-            // Checking input
-            validInput = true;
-            for(int i = 0; i < options.length; i++) {validInput = validInput && (choice != options[i]);}
+            choice = terminal.nextOption();
 
         }
 
@@ -85,75 +77,40 @@ public class Main {
 
     /**
      * Prints a headline for the ATM
+     *
+     * @param terminal the terminal to print to
      */
-    public static void headline() {
-        System.out.println("------------------------------ $ ------------------------------");
-        System.out.println("                          AE Bank ATM                          ");
-        System.out.println("------------------------------ $ ------------------------------");
-        System.out.println();
-    }
+    public static void headline(Terminal terminal) {terminal.print(HEADLINE);}
+
+    /**
+     * Scrolls the screen of the previous user away, so the next user does not see it.
+     *
+     * @param terminal the terminal to print to
+     */
+    public static void clearScreen(Terminal terminal) {terminal.print(CLEAR_SCREEN);}
 
     /**
      * Main method to run the ATM program.
      *
-     * Prompts the user to enter their first name and last name.
-     * If the user is an admin, it directs them to the admin menu.
-     * If the user wants to quit, the program ends.
-     * Otherwise, it checks if the user has an existing account and proceeds accordingly.
-     * If no account is found and there is available space, it offers to create a new account.
-     * After each interaction, it clears the screen for the next user.
+     * Runs a Session on the console until the user quits, then saves the accounts.
+     * The accounts are saved in the background meanwhile (see AccountPersister), so a crash loses nothing and no choice waits for the file.
+     *
+     * Usage: java Main [historyDepth]
+     *
+     * @param args the number of transactions kept by the accounts created (default Account.DEFAULT_DEPTH)
      */
     public static void main(String[] args) {
 
-        for (int i = 0; i < 80; i++) {System.out.println();}
+        Terminal terminal = Terminal.console();
+        clearScreen(terminal);
 
-        Scanner input = new Scanner(System.in);
         ATM Atm = new ATM();
+        if (args.length > 0) {Atm.setHistoryDepth(Integer.parseInt(args[0]));}
+        Atm.startPersister(AccountPersister.DEFAULT_INTERVAL_MILLIS, AccountPersister.DEFAULT_THRESHOLD);
 
-        boolean quit = false;
-
-        while (!quit) {
-
-            headline();
-            System.out.println("Welcome to AEBank's ATM");
-
-            System.out.println("What is your first name? ");
-            String userName = input.next();
-            System.out.println("What is your last name? ");
-            String userLastName = input.next();
-
-            if (userName.equals("4DM1N") && userLastName.equals("157R470R")) {Atm.adminMenu();} else {
-                if (userName.equals("Quit") && userLastName.equals("Quit")) {
-                    quit = true;
-                } else {
-
-                    int accountNum = Atm.namesToAccountNum(userName, userLastName);
-
-                    if (accountNum == -1) {
-                        System.out.print("No account was found under your name");
-                        if (Atm.hasSpace()) {
-                            System.out.print(", but you can set one up right now.\n");
-                            if(wantNewAccount(userName) == 'Y') {
-                                System.out.println("A new account is being created for you.");
-                                Atm.menu(Atm.createNewAccount(userName, userLastName));
-                            }
-                        } else {
-                            System.out.print(", and no space is available at the moment.");
-                        }
-                    } else {
-                        Atm.menu(accountNum);
-                    }
-
-                    for (int i = 0; i < 80; i++) {System.out.println();}
-
-                }
-            }
-
-            // Atm.saveAccounts();
-
-        }
+        new Session(Atm, terminal).run();
 
-        Atm.saveAccounts();
+        Atm.stopPersister();
 
     } // end of main method
 
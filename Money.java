@@ -0,0 +1,217 @@
+public class Money {
+
+    /*
+     * Amounts of money are longs counting cents (12.5 is 1250), so adding and subtracting them is exact.
+     * They are parsed from and written to text digit by digit, without Double.parseDouble or DecimalFormat:
+     *
+     *   parse accepts "12", "12.5", "-0.07", "1.0E5", "12.345" (rounded half away from zero to 12.35), ...
+     *   append writes "12.50", "-0.07", "100000.00", ... (always two decimals)
+     *
+     * Only about 92 thousand trillion can be held (Long.MAX_VALUE cents); going past it throws an ArithmeticException.
+     */
+
+    /** The number of cents in one unit */
+    public static final int SCALE = 100;
+
+    /** The number of decimals of an amount */
+    private static final int DECIMALS = 2;
+
+    /** The powers of ten that fit in a long */
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;}
+    }
+
+    /**
+     * Parses an amount.
+     *
+     * @param text the amount, in plain or scientific notation
+     * @return the amount in cents
+     * @throws NumberFormatException if the text is not a number
+     * @throws ArithmeticException if the amount does not fit in a long of cents
+     */
+    public static long parse(CharSequence text) {return parse(text, 0, text.length());}
+
+    /**
+     * Parses an amount from part of a text, without creating any object.
+     * Digits after the cents are rounded half away from zero.
+     *
+     * @param text the text
+     * @param from the index of the first character of the amount
+     * @param to the index after the last character of the amount
+     * @return the amount in cents
+     * @throws NumberFormatException if the characters are not a number
+     * @throws ArithmeticException if the amount does not fit in a long of cents
+     */
+    public static long parse(CharSequence text, int from, int to) {
+
+        int pos = from;
+        boolean negative = false;
+
+        if (pos < to && (text.charAt(pos) == '-' || text.charAt(pos) == '+')) {
+            negative = text.charAt(pos) == '-';
+            pos++;
+        }
+
+        // Digits (with the point removed) and the number of digits after the point
+        long digits = 0;
+        int decimals = 0;
+        int digitCount = 0;
+        boolean point = false;
+
+        // Only ASCII digits: Character.isDigit also accepts the digits of other scripts, which c - '0' would turn into wrong values
+        while (pos < to && (isDigit(text.charAt(pos)) || (text.charAt(pos) == '.' && !point))) {
+            char c = text.charAt(pos);
+            if (c == '.') {
+                point = true;
+            } else {
+                digits = Math.addExact(Math.multiplyExact(digits, 10), c - '0');
+                if (point) {decimals++;}
+                digitCount++;
+            }
+            pos++;
+        }
+
+        if (digitCount == 0) {throw new NumberFormatException("Not an amount: " + text.subSequence(from, to));}
+
+        int exponent = 0;
+        if (pos < to && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+            exponent = parseExponent(text, pos + 1, to);
+            pos = to;
+        }
+
+        if (pos != to) {throw new NumberFormatException("Not an amount: " + text.subSequence(from, to));}
+
+        // The number is digits * 10^(exponent - decimals), so in cents it is digits * 10^shift
+        long shift = (long) exponent - decimals + DECIMALS;
+        long cents;
+
+        if (digits == 0) {
+            cents = 0;
+        } else if (shift >= 0) {
+            if (shift >= POWERS_OF_TEN.length) {throw new ArithmeticException("Amount too large: " + text.subSequence(from, to));}
+            cents = Math.multiplyExact(digits, POWERS_OF_TEN[(int) shift]);
+        } else if (-shift >= POWERS_OF_TEN.length) {
+            cents = 0;
+        } else {
+            long divisor = POWERS_OF_TEN[(int) -shift];
+            cents = digits / divisor;
+            if ((digits % divisor) * 2 >= divisor) {cents++;}
+        }
+
+        return negative ? -cents : cents;
+
+    }
+
+    /**
+     * Parses the exponent of an amount in scientific notation.
+     *
+     * @param text the text
+     * @param from the index of the first character of the exponent
+     * @param to the index after the last character of the exponent
+     * @return the exponent
+     * @throws NumberFormatException if the characters are not an exponent
+     * @throws ArithmeticException if the exponent is too large
+     */
+    private static int parseExponent(CharSequence text, int from, int to) {
+
+        int pos = from;
+        boolean negative = false;
+
+        if (pos < to && (text.charAt(pos) == '-' || text.charAt(pos) == '+')) {
+            negative = text.charAt(pos) == '-';
+            pos++;
+        }
+
+        if (pos == to) {throw new NumberFormatException("Missing exponent: " + text.subSequence(from, to));}
+
+        int exponent = 0;
+        while (pos < to) {
+            char c = text.charAt(pos);
+            if (!isDigit(c)) {throw new NumberFormatException("Not an exponent: " + text.subSequence(from, to));}
+            exponent = Math.addExact(Math.multiplyExact(exponent, 10), c - '0');
+            pos++;
+        }
+
+        return negative ? -exponent : exponent;
+
+    }
+
+    /**
+     * Checks if a character is an ASCII digit.
+     *
+     * @param c the character
+     * @return true if 'c' is one of '0' to '9'
+     */
+    private static boolean isDigit(char c) {return c >= '0' && c <= '9';}
+
+    /**
+     * Appends an amount with two decimals to a StringBuilder, without creating any object.
+     *
+     * @param builder the StringBuilder
+     * @param cents the amount in cents
+     * @return the StringBuilder
+     */
+    public static StringBuilder append(StringBuilder builder, long cents) {
+
+        long units = cents / SCALE;
+        long rest = cents % SCALE;
+
+        // Negating the parts (not the amount) also works for Long.MIN_VALUE
+        if (cents < 0) {
+            builder.append('-');
+            units = -units;
+            rest = -rest;
+        }
+
+        return builder.append(units).append('.').append((char) ('0' + rest / 10)).append((char) ('0' + rest % 10));
+
+    }
+
+    /**
+     * Formats an amount with two decimals.
+     *
+     * @param cents the amount in cents
+     * @return the formatted amount
+     */
+    public static String toString(long cents) {return append(new StringBuilder(24), cents).toString();}
+
+    /**
+     * Converts an amount to a double (for statistics and reports, where exactness is not needed).
+     *
+     * @param cents the amount in cents
+     * @return the amount in units
+     */
+    public static double toDouble(long cents) {return cents / (double) SCALE;}
+
+    /**
+     * Converts a double to an amount, rounding to the nearest cent.
+     *
+     * @param amount the amount in units
+     * @return the amount in cents
+     * @throws ArithmeticException if the amount is not finite or does not fit in a long of cents
+     */
+    public static long fromDouble(double amount) {
+        double cents = Math.rint(amount * SCALE);
+        if (!(cents >= -0x1p63 && cents < 0x1p63)) {throw new ArithmeticException("Amount out of range: " + amount);}
+        return (long) cents;
+    }
+
+    /**
+     * Adds two amounts, giving the largest (or smallest) amount instead of overflowing.
+     * Used for running totals, which must never make a transaction fail.
+     *
+     * @param a the first amount in cents
+     * @param b the second amount in cents
+     * @return the sum, clamped to the range of a long
+     */
+    public static long addSaturated(long a, long b) {
+        long sum = a + b;
+        // Overflow only happens if both have the same sign and the sum has the other one
+        if (((a ^ sum) & (b ^ sum)) < 0) {return (a < 0) ? Long.MIN_VALUE : Long.MAX_VALUE;}
+        return sum;
+    }
+
+}
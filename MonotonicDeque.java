@@ -0,0 +1,109 @@
+public class MonotonicDeque {
+
+    /*
+     * Keeps the minimum (or maximum) of a sliding window of values in O(1) amortized time per value.
+     *
+     * Values are pushed with increasing sequence numbers. A pushed value drops every value at the back
+     * that can no longer be the minimum (they are older and not smaller), so the values stored are increasing
+     * from front to back and the front is always the minimum of the window.
+     * The deque is a ring buffer of 'capacity' entries, which is enough for a window of 'capacity' values.
+     */
+
+    /** Stores the sequence numbers of the values */
+    private final long[] seqs;
+
+    /** Stores the values */
+    private final long[] values;
+
+    /** True if the deque keeps the maximum instead of the minimum */
+    private final boolean maximum;
+
+    /** Stores the index of the front entry */
+    private int front;
+
+    /** Stores the number of entries */
+    private int size;
+
+    /**
+     * Constructor for the MonotonicDeque class.
+     *
+     * @param capacity the size of the window
+     * @param maximum true to keep the maximum of the window, false to keep the minimum
+     */
+    public MonotonicDeque(int capacity, boolean maximum) {
+        this.seqs = new long[capacity];
+        this.values = new long[capacity];
+        this.maximum = maximum;
+        this.front = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Adds a value to the window, dropping the values that fell out of it.
+     * The window holds the values with sequence numbers from 'seq - capacity + 1' to 'seq'.
+     *
+     * @param seq the sequence number of the value (greater than any pushed before)
+     * @param value the value
+     */
+    public void push(long seq, long value) {
+
+        // Dropping the front values that are out of the window
+        while (size > 0 && seqs[front] <= seq - seqs.length) {
+            front = next(front);
+            size--;
+        }
+
+        // Dropping the back values the new one dominates
+        while (size > 0 && !beats(values[index(size - 1)], value)) {size--;}
+
+        int back = index(size);
+        seqs[back] = seq;
+        values[back] = value;
+        size++;
+
+    }
+
+    /**
+     * Retrieves the minimum (or maximum) of the window.
+     *
+     * @return the value at the front (0 if nothing was pushed)
+     */
+    public long peek() {return (size == 0) ? 0 : values[front];}
+
+    /**
+     * Empties the deque.
+     */
+    public void clear() {
+        front = 0;
+        size = 0;
+    }
+
+    /**
+     * Checks if a value stays in front of a newer one.
+     *
+     * @param older the older value
+     * @param newer the newer value
+     * @return true if the older value is strictly smaller (strictly greater for a maximum deque)
+     */
+    private boolean beats(long older, long newer) {return maximum ? older > newer : older < newer;}
+
+    /**
+     * Finds the index of an entry in the ring buffer.
+     *
+     * @param i the position of the entry (0 is the front)
+     * @return the index of the entry
+     */
+    private int index(int i) {
+        int index = front + i;
+        return (index >= seqs.length) ? index - seqs.length : index;
+    }
+
+    /**
+     * Finds the index after another one in the ring buffer.
+     *
+     * @param index the index
+     * @return the next index
+     */
+    private int next(int index) {return (index + 1 == seqs.length) ? 0 : index + 1;}
+
+}
@@ -0,0 +1,244 @@
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class ParallelAccountLoader {
+
+    /** The headline every accounts file starts with */
+    private static final String HEADLINE = "AEBank-AccountsFileIsValid-MaxAccounts:";
+
+    /** Chunks smaller than this are not split any further */
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    /** Chunks are split below this size, so each one fits in one mapping (a mapping cannot exceed 2 GB, and a chunk grows to the end of its last line) */
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+    /** Stores the channel of the accounts file (the chunks are memory-mapped from it, so the file is never read whole into the heap) */
+    private final FileChannel channel;
+
+    /** Stores the size of the accounts file in bytes */
+    private final long size;
+
+    /** Stores the charset used to decode each line (same as the sequential loader) */
+    private final Charset charset;
+
+    /** Stores the maximum number of accounts read from the headline */
+    private final int maxAccounts;
+
+    /** Stores the position of the first byte after the headline */
+    private final long dataStart;
+
+    /**
+     * Constructor for the ParallelAccountLoader class.
+     * Opens the accounts file and parses its headline.
+     *
+     * @param fileName the name of the file containing account information
+     * @throws IOException if the file cannot be read
+     */
+    public ParallelAccountLoader(String fileName) throws IOException {
+
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.charset = Charset.defaultCharset();
+
+        long headlineEnd = nextLineStart(0);
+        ByteBuffer headline = ByteBuffer.allocate((int) Math.min(headlineEnd, MIN_CHUNK_SIZE));
+        while (headline.hasRemaining() && channel.read(headline, headline.position()) > 0) {}
+        String fileHeadline = new String(headline.array(), 0, headline.position(), charset).trim();
+        assert fileHeadline.startsWith(HEADLINE);
+
+        this.maxAccounts = Integer.parseInt(fileHeadline.substring(HEADLINE.length()).trim());
+        this.dataStart = headlineEnd;
+
+    }
+
+    /**
+     * Retrieves the maximum number of accounts of the file.
+     *
+     * @return the number after "MaxAccounts:" in the headline
+     */
+    public int maxAccounts() {return maxAccounts;}
+
+    /**
+     * Parses every account line on the common fork-join pool and stores them in order.
+     *
+     * The file is split into line-aligned chunks, each chunk is memory-mapped and parsed by its own task,
+     * and then the chunks are copied one after the other, so account i is the same one the sequential loader gives.
+     *
+     * @param accounts the array to fill (at most accounts.length account numbers are filled, empty ones are left null)
+     * @return the number of account numbers filled
+     * @throws IOException if the file cannot be mapped
+     */
+    public int loadInto(Account[] accounts) throws IOException {
+
+        // Splitting the file into chunks that start right after a newline
+        long length = size - dataStart;
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        long wanted = Math.max(Math.min(parallelism * 4L, length / MIN_CHUNK_SIZE), (length + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        int numChunks = (int) Math.max(1, wanted);
+        long[] bounds = new long[numChunks + 1];
+        bounds[0] = dataStart;
+        for (int c = 1; c < numChunks; c++) {
+            long target = dataStart + length * c / numChunks;
+            bounds[c] = Math.max(bounds[c - 1], nextLineStart(target));
+        }
+        bounds[numChunks] = size;
+
+        MappedByteBuffer[] mapped = new MappedByteBuffer[numChunks];
+        for (int c = 0; c < numChunks; c++) {mapped[c] = channel.map(FileChannel.MapMode.READ_ONLY, bounds[c], bounds[c + 1] - bounds[c]);}
+
+        // Parsing every chunk in parallel
+        List<List<Account>> chunks = parseChunks(mapped);
+
+        // Copying the chunks in file order
+        int i = 0;
+        for (int c = 0; c < numChunks && i < accounts.length; c++) {
+            for (int a = 0; a < chunks.get(c).size() && i < accounts.length; a++) {
+                accounts[i] = chunks.get(c).get(a);
+                i++;
+            }
+        }
+
+        return i;
+
+    }
+
+    /**
+     * Closes the accounts file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void close() throws IOException {channel.close();}
+
+    /**
+     * Parses the mapped chunks on the common fork-join pool.
+     *
+     * @param mapped the chunks, in file order
+     * @return the accounts of each chunk, in file order
+     */
+    private List<List<Account>> parseChunks(MappedByteBuffer[] mapped) {
+        // Each task only sets its own chunks, so the list is filled with nulls first and never resized
+        List<List<Account>> chunks = new ArrayList<>(Collections.nCopies(mapped.length, (List<Account>) null));
+        ForkJoinPool.commonPool().invoke(new ParseTask(mapped, chunks, 0, chunks.size()));
+        return chunks;
+    }
+
+    /**
+     * Finds the start of the line after the specified position.
+     *
+     * @param pos the position to start looking from
+     * @return the position after the next '\n' (the size of the file if there is none)
+     * @throws IOException if the file cannot be read
+     */
+    private long nextLineStart(long pos) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (pos < size) {
+            buffer.clear();
+            int read = channel.read(buffer, pos);
+            if (read <= 0) {break;}
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {return pos + i + 1;}
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parses every line of a mapped chunk of the file.
+     *
+     * @param chunk the chunk (it starts at the start of a line and ends at the start of a line or at the end of the file)
+     * @return the accounts of the chunk, in file order (null for the lines of empty account numbers)
+     */
+    private ArrayList<Account> parseChunk(MappedByteBuffer chunk) {
+        ArrayList<Account> accounts = new ArrayList<>();
+        byte[] bytes = new byte[256];
+        int end = chunk.limit();
+        int lineStart = 0;
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && chunk.get(lineEnd) != '\n') {lineEnd++;}
+            int length = lineEnd - lineStart;
+            if (bytes.length < length) {bytes = Arrays.copyOf(bytes, Math.max(length, bytes.length * 2));}
+            for (int b = 0; b < length; b++) {bytes[b] = chunk.get(lineStart + b);}
+            // Lines ending with "\r\n" lose their '\r', like readLine does in the sequential loader
+            if (length > 0 && bytes[length - 1] == '\r') {length--;}
+            String line = new String(bytes, 0, length, charset);
+            if (ATM.isEmptySlot(line)) {
+                // Empty account numbers are kept empty, like in the sequential loader
+                accounts.add(null);
+            } else {
+                // Blank lines (e.g. a trailing newline) are skipped and invalid lines are rejected, like in the sequential loader
+                try {
+                    Account account = ATM.parseAccount(line);
+                    if (account != null) {accounts.add(account);}
+                } catch (IllegalArgumentException Invalid) {
+                    ATM.reject(Invalid);
+                    accounts.add(null);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return accounts;
+    }
+
+    /**
+     * Fork-join task that parses a range of chunks, splitting the range in half until one chunk is left.
+     */
+    private class ParseTask extends RecursiveAction {
+
+        /** The version of the serialized form (tasks are never serialized, but RecursiveAction is Serializable) */
+        private static final long serialVersionUID = 1L;
+
+        /** Stores the mapped chunks */
+        private final MappedByteBuffer[] mapped;
+
+        /** Stores the parsed accounts of every chunk */
+        private final List<List<Account>> chunks;
+
+        /** Stores the first chunk of the range */
+        private final int from;
+
+        /** Stores the chunk after the range */
+        private final int to;
+
+        /**
+         * Constructor for the ParseTask class.
+         *
+         * @param mapped the mapped chunks, in file order
+         * @param chunks the list where the accounts of each chunk are stored
+         * @param from the first chunk of the range
+         * @param to the chunk after the range
+         */
+        ParseTask(MappedByteBuffer[] mapped, List<List<Account>> chunks, int from, int to) {
+            this.mapped = mapped;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                chunks.set(from, parseChunk(mapped[from]));
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ParseTask(mapped, chunks, from, mid), new ParseTask(mapped, chunks, mid, to));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,145 @@
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+public class Pbkdf2PinVerifier implements PinVerifier {
+
+    /*
+     * Hashes PINs with PBKDF2-HMAC-SHA256, a random 16-byte salt per credential and a 32-byte hash.
+     *
+     *   pbkdf2          the hash of the PIN digits
+     *   pbkdf2-legacy   the hash of the digits of Account.encryptPassword(pin), for migrated legacy credentials
+     *
+     * encryptPassword maps many PINs to the same value, so a PIN matching a pbkdf2-legacy credential may not be the owner's PIN.
+     * Such a credential is therefore never re-hashed from the PIN typed (see needsUpgrade): that would lock the owner out.
+     * It is replaced when the owner changes the PIN.
+     *
+     * A PIN has only about ten thousand values, so no iteration count stops someone who has the file from trying them all.
+     * Online guessing is stopped by the ATM instead: an account is locked for longer and longer after wrong PINs (see Lockout),
+     * and the login limiter caps the PINs hashed per second (see LoginRateLimiter). The iterations only have to make the offline
+     * search cost something, so the default is kept low enough for a login to take well under a millisecond (see LoginBenchmark).
+     * Each credential keeps its own iteration count, so changing it does not invalidate the stored credentials.
+     */
+
+    /** The scheme of credentials hashing the PIN */
+    public static final String SCHEME = "pbkdf2";
+
+    /** The scheme of credentials hashing a legacy encrypted PIN */
+    public static final String LEGACY_SCHEME = "pbkdf2-legacy";
+
+    /** The number of iterations used when none is given */
+    public static final int DEFAULT_ITERATIONS = 1000;
+
+    /** The algorithm of the key factory */
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+
+    /** The size of the salts in bytes */
+    private static final int SALT_BYTES = 16;
+
+    /** The size of the hashes in bits */
+    private static final int HASH_BITS = 256;
+
+    /** Generates the salts */
+    private static final SecureRandom random = new SecureRandom();
+
+    /** Gives each thread its own key factory (they are not thread-safe) */
+    private static final ThreadLocal<SecretKeyFactory> factories = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    });
+
+    /** Stores the number of iterations of the new credentials */
+    private final int iterations;
+
+    /**
+     * Constructor for the Pbkdf2PinVerifier class with DEFAULT_ITERATIONS.
+     */
+    public Pbkdf2PinVerifier() {this(DEFAULT_ITERATIONS);}
+
+    /**
+     * Constructor for the Pbkdf2PinVerifier class.
+     *
+     * @param iterations the number of iterations of the new credentials (at least 1)
+     * @throws IllegalArgumentException if the iterations are less than 1
+     */
+    public Pbkdf2PinVerifier(int iterations) {
+        if (iterations < 1) {throw new IllegalArgumentException("The iterations must be at least 1: " + iterations);}
+        this.iterations = iterations;
+    }
+
+    @Override
+    public Credential create(int pin) {
+        byte[] salt = newSalt();
+        return new Credential(SCHEME, iterations, salt, hash(Integer.toString(pin), salt, iterations));
+    }
+
+    @Override
+    public Credential migrate(Credential legacy) {
+        if (!legacy.isLegacy()) {return legacy;}
+        byte[] salt = newSalt();
+        return new Credential(LEGACY_SCHEME, iterations, salt, hash(Integer.toString(legacy.legacyValue()), salt, iterations));
+    }
+
+    @Override
+    public boolean verify(Credential credential, int pin) {
+        switch (credential.scheme()) {
+            case SCHEME:
+                return credential.matches(hash(Integer.toString(pin), credential.salt(), credential.iterations()));
+            case LEGACY_SCHEME:
+                return credential.matches(hash(Integer.toString(Account.encryptPassword(pin)), credential.salt(), credential.iterations()));
+            case Credential.LEGACY:
+                return credential.matches(Credential.intBytes(Account.encryptPassword(pin)));
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public boolean needsUpgrade(Credential credential) {
+        // Only credentials of the PIN itself; the PIN typed may only share its encrypted value with the owner's (see above)
+        return SCHEME.equals(credential.scheme()) && credential.iterations() != iterations;
+    }
+
+    /**
+     * Retrieves the number of iterations of the new credentials.
+     *
+     * @return the iterations
+     */
+    public int iterations() {return iterations;}
+
+    /**
+     * Generates a new salt.
+     *
+     * @return SALT_BYTES random bytes
+     */
+    private static byte[] newSalt() {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        return salt;
+    }
+
+    /**
+     * Hashes a secret with PBKDF2.
+     *
+     * @param secret the secret (the digits of a PIN)
+     * @param salt the salt
+     * @param iterations the number of iterations
+     * @return the hash (HASH_BITS bits)
+     */
+    private static byte[] hash(String secret, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(secret.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return factories.get().generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " failed", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+}
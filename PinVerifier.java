@@ -0,0 +1,44 @@
+public interface PinVerifier {
+
+    /*
+     * Turns PINs into credentials and checks PINs against them.
+     * Account uses one verifier for every account (see Account.setPinVerifier); Pbkdf2PinVerifier is the default.
+     * Implementations must be thread-safe, since sessions log in concurrently.
+     */
+
+    /**
+     * Hashes a new PIN with a new salt.
+     *
+     * @param pin the PIN typed by the user (not encrypted)
+     * @return the credential to store
+     */
+    Credential create(int pin);
+
+    /**
+     * Hashes a legacy credential (a PIN encrypted with Account.encryptPassword) with a new salt, so the old value is no longer stored.
+     * The PINs that matched the legacy credential must match the migrated one.
+     *
+     * @param legacy the legacy credential
+     * @return the migrated credential (the same credential if it is not a legacy one)
+     */
+    Credential migrate(Credential legacy);
+
+    /**
+     * Checks a PIN against a credential, comparing the hashes in constant time.
+     *
+     * @param credential the stored credential
+     * @param pin the PIN typed by the user (not encrypted)
+     * @return true if the PIN matches
+     */
+    boolean verify(Credential credential, int pin);
+
+    /**
+     * Checks if a credential should be replaced by create(pin) the next time its PIN is verified
+     * (e.g. one hashed with fewer iterations than the verifier uses now).
+     *
+     * @param credential the stored credential
+     * @return true if it should be replaced
+     */
+    boolean needsUpgrade(Credential credential);
+
+}
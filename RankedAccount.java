@@ -0,0 +1,66 @@
+public class RankedAccount {
+
+    /** The position of the account in the report (1 is the highest balance) */
+    private final int rank;
+
+    /** The first name of the account holder */
+    private final String name;
+
+    /** The last name of the account holder */
+    private final String lastName;
+
+    /** The balance of the account when the report was made, in cents */
+    private final long balance;
+
+    /**
+     * Constructor for the RankedAccount class.
+     *
+     * @param rank the position of the account in the report
+     * @param name the first name of the account holder
+     * @param lastName the last name of the account holder
+     * @param balance the balance of the account, in cents
+     */
+    public RankedAccount(int rank, String name, String lastName, long balance) {
+        this.rank = rank;
+        this.name = name;
+        this.lastName = lastName;
+        this.balance = balance;
+    }
+
+    /**
+     * Retrieves the position of the account in the report.
+     *
+     * @return the rank (1 is the highest balance)
+     */
+    public int rank() {return rank;}
+
+    /**
+     * Retrieves the first name of the account holder.
+     *
+     * @return the first name
+     */
+    public String name() {return name;}
+
+    /**
+     * Retrieves the last name of the account holder.
+     *
+     * @return the last name
+     */
+    public String lastName() {return lastName;}
+
+    /**
+     * Retrieves the balance of the account when the report was made.
+     *
+     * @return the balance, in cents
+     */
+    public long balance() {return balance;}
+
+    /**
+     * Formats the account for display.
+     *
+     * @return the rank, names and balance
+     */
+    @Override
+    public String toString() {return rank + ". " + name + " " + lastName + ": " + Money.toString(balance);}
+
+}
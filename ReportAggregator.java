@@ -0,0 +1,189 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class ReportAggregator {
+
+    /** Ranges with fewer accounts than this are not split any further */
+    private static final int THRESHOLD = 8192;
+
+    /** Stores the accounts to aggregate (null slots are skipped) */
+    private final Account[] accounts;
+
+    /** Stores the upper bounds of the histogram buckets, ascending */
+    private final double[] bounds;
+
+    /**
+     * Constructor for the ReportAggregator class.
+     *
+     * @param accounts the accounts to aggregate (null slots are skipped)
+     * @param bounds the upper bounds of the histogram buckets, ascending
+     * @throws IllegalArgumentException if the bounds are not ascending
+     */
+    public ReportAggregator(Account[] accounts, double[] bounds) {
+        for (int i = 1; i < bounds.length; i++) {
+            if (!(bounds[i - 1] < bounds[i])) {throw new IllegalArgumentException("The histogram bounds must be ascending.");}
+        }
+        this.accounts = accounts;
+        this.bounds = Arrays.copyOf(bounds, bounds.length);
+    }
+
+    /**
+     * Aggregates every account on the common fork-join pool.
+     * The accounts are split in ranges, each range is summed in primitive fields (no boxing), and the partial totals are merged.
+     * Amounts are added up in exact cents, so the totals do not depend on how the accounts were split.
+     *
+     * @return the report
+     * @throws ArithmeticException if a total does not fit in a long
+     */
+    public BankReport run() {
+        Totals totals = ForkJoinPool.commonPool().invoke(new AggregateTask(0, accounts.length));
+        return new BankReport(totals.accounts, totals.blocked, totals.balance,
+                (totals.accounts == 0) ? 0L : totals.minBalance, (totals.accounts == 0) ? 0L : totals.maxBalance,
+                totals.transactions, totals.deposits, totals.withdrawals, Arrays.copyOf(bounds, bounds.length), totals.histogram);
+    }
+
+    /**
+     * Partial totals of a range of accounts.
+     */
+    private class Totals {
+
+        /** The number of accounts and of blocked accounts */
+        private long accounts;
+        private long blocked;
+
+        /** The sum, minimum and maximum of the balances, in cents */
+        private long balance;
+        private long minBalance = Long.MAX_VALUE;
+        private long maxBalance = Long.MIN_VALUE;
+
+        /** The number of transactions and the totals deposited and withdrawn, in cents */
+        private long transactions;
+        private long deposits;
+        private long withdrawals;
+
+        /** The number of accounts in each bucket */
+        private final long[] histogram = new long[bounds.length + 1];
+
+        /**
+         * Adds an account to the totals.
+         * Its fields are read under its lock, so a change made at the same time is either fully counted or not at all.
+         *
+         * @param account the account
+         * @throws ArithmeticException if a total does not fit in a long
+         */
+        private void add(Account account) {
+
+            long accountBalance;
+            boolean accountBlocked;
+            long accountTransactions;
+            long accountDeposits;
+            long accountWithdrawals;
+            synchronized (account) {
+                accountBalance = account.balance();
+                accountBlocked = account.blocked();
+                accountTransactions = account.transactionCount();
+                accountDeposits = account.depositTotal();
+                accountWithdrawals = account.withdrawalTotal();
+            }
+
+            accounts++;
+            if (accountBlocked) {blocked++;}
+
+            balance = Math.addExact(balance, accountBalance);
+            if (accountBalance < minBalance) {minBalance = accountBalance;}
+            if (accountBalance > maxBalance) {maxBalance = accountBalance;}
+
+            transactions += accountTransactions;
+            deposits = Math.addExact(deposits, accountDeposits);
+            withdrawals = Math.addExact(withdrawals, accountWithdrawals);
+
+            histogram[bucket(Money.toDouble(accountBalance))]++;
+
+        }
+
+        /**
+         * Adds the totals of another range.
+         *
+         * @param other the totals of the other range
+         * @throws ArithmeticException if a total does not fit in a long
+         */
+        private void merge(Totals other) {
+            accounts += other.accounts;
+            blocked += other.blocked;
+            balance = Math.addExact(balance, other.balance);
+            minBalance = Math.min(minBalance, other.minBalance);
+            maxBalance = Math.max(maxBalance, other.maxBalance);
+            transactions += other.transactions;
+            deposits = Math.addExact(deposits, other.deposits);
+            withdrawals = Math.addExact(withdrawals, other.withdrawals);
+            for (int i = 0; i < histogram.length; i++) {histogram[i] += other.histogram[i];}
+        }
+
+    }
+
+    /**
+     * Finds the histogram bucket of a balance.
+     *
+     * @param balance the balance
+     * @return the index of the first bound above the balance (bounds.length if there is none)
+     */
+    private int bucket(double balance) {
+        int i = Arrays.binarySearch(bounds, balance);
+        // A balance equal to a bound goes to the bucket above it
+        return (i >= 0) ? i + 1 : -(i + 1);
+    }
+
+    /**
+     * Aggregates a range of the accounts array, splitting it in halves until it is small enough.
+     */
+    private class AggregateTask extends RecursiveTask<Totals> {
+
+        /** The version of the serialized form (tasks are never serialized, but RecursiveTask is Serializable) */
+        private static final long serialVersionUID = 1L;
+
+        /** Stores the first account number of the range */
+        private final int from;
+
+        /** Stores the account number after the range */
+        private final int to;
+
+        /**
+         * Constructor for the AggregateTask class.
+         *
+         * @param from the first account number of the range
+         * @param to the account number after the range
+         */
+        private AggregateTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Sums the range, or splits it and merges the totals of both halves.
+         *
+         * @return the totals of the range
+         */
+        @Override
+        protected Totals compute() {
+
+            if (to - from <= THRESHOLD) {
+                Totals totals = new Totals();
+                for (int i = from; i < to; i++) {
+                    if (accounts[i] != null) {totals.add(accounts[i]);}
+                }
+                return totals;
+            }
+
+            int mid = (from + to) >>> 1;
+            AggregateTask left = new AggregateTask(from, mid);
+            left.fork();
+            Totals totals = new AggregateTask(mid, to).compute();
+            totals.merge(left.join());
+            return totals;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,41 @@
+import java.io.File;
+import java.io.IOException;
+
+public class SaveBenchmark {
+
+    /**
+     * Measures the write throughput of ATM.saveAccounts on a large account set.
+     *
+     * Usage: java SaveBenchmark [numAccounts] [rounds]
+     *
+     * @param args the number of accounts to generate (default 1000000) and the number of timed rounds (default 3)
+     */
+    public static void main(String[] args) throws IOException {
+
+        int numAccounts = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+
+        File fd = File.createTempFile("SaveBenchmark", ".txt");
+        String fileName = fd.getPath();
+
+        LoaderBenchmark.writeAccountsFile(fileName, numAccounts);
+        ATM atm = new ATM(fileName);
+
+        try {
+            for (int round = 1; round <= rounds; round++) {
+
+                long start = System.nanoTime();
+                atm.saveAccounts();
+                long saveTime = System.nanoTime() - start;
+
+                double seconds = saveTime / 1e9;
+                System.out.printf("Round %d: %d ms, %.0f accounts/s, %.1f MiB/s%n", round, saveTime / 1000000, numAccounts / seconds, fd.length() / seconds / (1 << 20));
+
+            }
+        } finally {
+            LoaderBenchmark.deleteAccountsFiles(fileName);
+        }
+
+    }
+
+}
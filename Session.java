@@ -0,0 +1,86 @@
+public class Session implements Runnable {
+
+    /** Stores the ATM shared by every session */
+    private final ATM Atm;
+
+    /** Stores the terminal of this session */
+    private final Terminal terminal;
+
+    /**
+     * Constructor for the Session class.
+     *
+     * @param Atm the ATM the session works on
+     * @param terminal the terminal the user of the session types on
+     */
+    public Session(ATM Atm, Terminal terminal) {
+        this.Atm = Atm;
+        this.terminal = terminal;
+    }
+
+    /**
+     * Runs the session until the user quits or disconnects.
+     *
+     * Prompts the user to enter their first name and last name.
+     * If the user is an admin, it directs them to the admin menu.
+     * If the user wants to quit, the session ends.
+     * Otherwise, it checks if the user has an existing account and proceeds accordingly.
+     * If no account is found and there is available space, it offers to create a new account.
+     * After each interaction, it clears the screen for the next user.
+     */
+    @Override
+    public void run() {
+
+        boolean quit = false;
+
+        try {
+
+            while (!quit) {
+
+                Main.headline(terminal);
+                terminal.println("Welcome to AEBank's ATM");
+
+                terminal.println("What is your first name? ");
+                String userName = terminal.next();
+                terminal.println("What is your last name? ");
+                String userLastName = terminal.next();
+
+                if (userName.equals("4DM1N") && userLastName.equals("157R470R")) {Atm.adminMenu(terminal);} else {
+                    if (userName.equals("Quit") && userLastName.equals("Quit")) {
+                        quit = true;
+                    } else {
+
+                        int accountNum = Atm.namesToAccountNum(userName, userLastName);
+
+                        if (accountNum == -1) {
+                            terminal.print("No account was found under your name");
+                            if (Atm.hasSpace()) {
+                                terminal.print(", but you can set one up right now.\n");
+                                if(Main.wantNewAccount(userName, terminal) == 'Y') {
+                                    terminal.println("A new account is being created for you.");
+                                    accountNum = Atm.createNewAccount(userName, userLastName, terminal);
+                                    // Another session may have taken the last slot in the meantime
+                                    if (accountNum != -1) {Atm.menu(accountNum, terminal);}
+                                }
+                            } else {
+                                terminal.print(", and no space is available at the moment.");
+                            }
+                        } else {
+                            Atm.menu(accountNum, terminal);
+                        }
+
+                        Main.clearScreen(terminal);
+
+                    }
+                }
+
+            }
+
+        } catch (java.util.NoSuchElementException Disconnected) {
+            // The input ended (e.g. the terminal was closed), so the session ends
+        }
+
+        terminal.flush();
+
+    }
+
+}
@@ -0,0 +1,316 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+import java.util.NoSuchElementException;
+
+public class Terminal {
+
+    /*
+     * Everything printed is appended to a buffer and written to the output in one write when the user is prompted
+     * (or on flush), so a whole menu costs a single write instead of one per line.
+     * The buffer, the encoder and the token read are reused, so printing and reading do not create objects once
+     * they are large enough; only next() and nextLine() create the String they return.
+     */
+
+    /** The size of the input and output buffers */
+    private static final int BUFFER_SIZE = 4096;
+
+    /** The longest token or line accepted; a longer one ends the session (nothing typed at an ATM is that long) */
+    private static final int MAX_TOKEN_LENGTH = 1024;
+
+    /** Stores the single reader used for every prompt of the session */
+    private final Reader input;
+
+    /** Stores the characters read from the input and not used yet */
+    private final char[] inputBuffer = new char[BUFFER_SIZE];
+
+    /** Stores the position of the next character of inputBuffer and the number of characters in it */
+    private int inputPos;
+    private int inputEnd;
+
+    /** Set once the session is ended, so every later read fails too */
+    private boolean closed;
+
+    /** Stores the last token read */
+    private final StringBuilder token = new StringBuilder(64);
+
+    /** Stores the stream every message of the session is written to */
+    private final OutputStream output;
+
+    /** Stores what was printed since the last write */
+    private final StringBuilder pending = new StringBuilder(BUFFER_SIZE);
+
+    /** Stores the pending characters while they are encoded */
+    private char[] chars = new char[BUFFER_SIZE];
+    private CharBuffer charBuffer = CharBuffer.wrap(chars);
+
+    /** Stores the encoded bytes before they are written */
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** Stores the encoder of the output (the default charset, like System.out) */
+    private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Constructor for the Terminal class.
+     *
+     * @param in the stream the user's input comes from
+     * @param out the stream the messages for the user go to
+     */
+    public Terminal(InputStream in, OutputStream out) {
+        this.input = new InputStreamReader(in, Charset.defaultCharset());
+        this.output = out;
+    }
+
+    /**
+     * Creates a terminal for the console (System.in and System.out).
+     *
+     * @return the console terminal
+     */
+    public static Terminal console() {return new Terminal(System.in, System.out);}
+
+    /**
+     * Prints a message.
+     *
+     * @param message the message to print
+     * @return the terminal, so prints can be chained
+     */
+    public Terminal print(CharSequence message) {
+        pending.append(message);
+        return this;
+    }
+
+    /**
+     * Prints a character.
+     *
+     * @param c the character to print
+     * @return the terminal, so prints can be chained
+     */
+    public Terminal print(char c) {
+        pending.append(c);
+        return this;
+    }
+
+    /**
+     * Prints a whole number.
+     *
+     * @param number the number to print
+     * @return the terminal, so prints can be chained
+     */
+    public Terminal print(long number) {
+        pending.append(number);
+        return this;
+    }
+
+    /**
+     * Prints a number.
+     *
+     * @param number the number to print
+     * @return the terminal, so prints can be chained
+     */
+    public Terminal print(double number) {
+        pending.append(number);
+        return this;
+    }
+
+    /**
+     * Prints an amount of money with two decimals (see Money).
+     *
+     * @param cents the amount in cents
+     * @return the terminal, so prints can be chained
+     */
+    public Terminal printMoney(long cents) {
+        Money.append(pending, cents);
+        return this;
+    }
+
+    /**
+     * Prints a message followed by a new line.
+     *
+     * @param message the message to print
+     * @return the terminal, so prints can be chained
+     */
+    public Terminal println(CharSequence message) {
+        pending.append(message).append('\n');
+        return this;
+    }
+
+    /**
+     * Prints a new line.
+     *
+     * @return the terminal, so prints can be chained
+     */
+    public Terminal println() {
+        pending.append('\n');
+        return this;
+    }
+
+    /**
+     * Reads the next token typed by the user (characters up to a whitespace, like Scanner.next).
+     * Everything printed so far is flushed first, so the user sees the prompt.
+     *
+     * @return the next token
+     * @throws NoSuchElementException if the user disconnected (or typed more than MAX_TOKEN_LENGTH characters at once)
+     */
+    public String next() {return nextToken().toString();}
+
+    /**
+     * Reads the next token typed by the user without creating a String.
+     * Everything printed so far is flushed first, so the user sees the prompt.
+     *
+     * @return the next token (only valid until the next read)
+     * @throws NoSuchElementException if the user disconnected (or typed more than MAX_TOKEN_LENGTH characters at once)
+     */
+    public CharSequence nextToken() {
+
+        flush();
+
+        int c = read();
+        while (c != -1 && Character.isWhitespace(c)) {c = read();}
+        if (c == -1) {throw new NoSuchElementException();}
+
+        token.setLength(0);
+        while (c != -1 && !Character.isWhitespace(c)) {
+            append(c);
+            c = read();
+        }
+        // The whitespace after the token stays unread, like Scanner does, so nextLine returns the rest of its line
+        if (c != -1) {inputPos--;}
+
+        return token;
+
+    }
+
+    /**
+     * Reads the next token typed by the user as an int, without creating any object.
+     * Everything printed so far is flushed first, so the user sees the prompt.
+     *
+     * @return the number typed
+     * @throws NumberFormatException if the token is not an int
+     * @throws NoSuchElementException if the user disconnected (or typed more than MAX_TOKEN_LENGTH characters at once)
+     */
+    public int nextInt() {
+        CharSequence text = nextToken();
+        return Integer.parseInt(text, 0, text.length(), 10);
+    }
+
+    /**
+     * Reads the first character of the next token typed by the user, in upper case (used for menu options).
+     * Everything printed so far is flushed first, so the user sees the prompt.
+     *
+     * @return the option typed
+     * @throws NoSuchElementException if the user disconnected (or typed more than MAX_TOKEN_LENGTH characters at once)
+     */
+    public char nextOption() {return Character.toUpperCase(nextToken().charAt(0));}
+
+    /**
+     * Reads the rest of the current line typed by the user.
+     * Everything printed so far is flushed first, so the user sees the prompt.
+     *
+     * @return the rest of the line
+     * @throws NoSuchElementException if the user disconnected (or typed more than MAX_TOKEN_LENGTH characters at once)
+     */
+    public String nextLine() {
+
+        flush();
+
+        int c = read();
+        if (c == -1) {throw new NoSuchElementException();}
+
+        token.setLength(0);
+        while (c != -1 && c != '\n') {
+            if (c != '\r') {append(c);}
+            c = read();
+        }
+
+        return token.toString();
+
+    }
+
+    /**
+     * Writes everything printed so far in one write.
+     * Errors are not reported (like PrintStream); a user who disconnected is noticed by the next read.
+     */
+    public void flush() {
+
+        if (pending.length() == 0) {return;}
+
+        int length = pending.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+            charBuffer = CharBuffer.wrap(chars);
+        }
+        pending.getChars(0, length, chars, 0);
+        pending.setLength(0);
+        charBuffer.clear();
+        charBuffer.limit(length);
+
+        try {
+            encoder.reset();
+            while (encoder.encode(charBuffer, bytes, true).isOverflow()) {writeBytes();}
+            while (encoder.flush(bytes).isOverflow()) {writeBytes();}
+            writeBytes();
+            output.flush();
+        } catch (IOException Disconnected) {
+            bytes.clear();
+        }
+
+    }
+
+    /**
+     * Writes the encoded bytes to the output.
+     *
+     * @throws IOException if the output cannot be written
+     */
+    private void writeBytes() throws IOException {
+        output.write(bytes.array(), 0, bytes.position());
+        bytes.clear();
+    }
+
+    /**
+     * Adds one character to the token being read.
+     * A token longer than MAX_TOKEN_LENGTH ends the session, so a client sending no whitespace cannot grow it without limit.
+     *
+     * @param c the character
+     * @throws NoSuchElementException if the token is already MAX_TOKEN_LENGTH characters long
+     */
+    private void append(int c) {
+        if (token.length() == MAX_TOKEN_LENGTH) {
+            closed = true;
+            throw new NoSuchElementException("More than " + MAX_TOKEN_LENGTH + " characters typed at once.");
+        }
+        token.append((char) c);
+    }
+
+    /**
+     * Reads one character of the input, refilling the buffer when it is used up.
+     *
+     * @return the character (-1 at the end of the input, if it cannot be read, or once the session was ended)
+     */
+    private int read() {
+        if (closed) {return -1;}
+        if (inputPos == inputEnd) {
+            try {
+                inputEnd = input.read(inputBuffer, 0, inputBuffer.length);
+            } catch (IOException Disconnected) {
+                inputEnd = -1;
+            }
+            inputPos = 0;
+            if (inputEnd <= 0) {
+                inputEnd = 0;
+                return -1;
+            }
+        }
+        return inputBuffer[inputPos++];
+    }
+
+}
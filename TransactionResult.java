@@ -0,0 +1,101 @@
+public class TransactionResult {
+
+    /** True if the operation was made */
+    private final boolean success;
+
+    /** Stores the account number the operation was made on (-1 if no account was found) */
+    private final int accountNum;
+
+    /** Stores the balance of the account after the operation, in cents */
+    private final long balance;
+
+    /** Stores why the operation failed (empty if it succeeded) */
+    private final String error;
+
+    /** Stores the session token given by a successful authentication (empty for every other result, see ATMService) */
+    private final String token;
+
+    /**
+     * Constructor for the TransactionResult class.
+     *
+     * @param success true if the operation was made
+     * @param accountNum the account number the operation was made on (-1 if no account was found)
+     * @param balance the balance of the account after the operation, in cents
+     * @param error why the operation failed (empty if it succeeded)
+     * @param token the session token (empty unless the result is a successful authentication)
+     */
+    private TransactionResult(boolean success, int accountNum, long balance, String error, String token) {
+        this.success = success;
+        this.accountNum = accountNum;
+        this.balance = balance;
+        this.error = error;
+        this.token = token;
+    }
+
+    /**
+     * Creates the result of a successful operation.
+     *
+     * @param accountNum the account number
+     * @param balance the balance after the operation, in cents
+     * @return the result
+     */
+    public static TransactionResult success(int accountNum, long balance) {return new TransactionResult(true, accountNum, balance, "", "");}
+
+    /**
+     * Creates the result of a successful authentication.
+     *
+     * @param accountNum the account number
+     * @param balance the current balance, in cents
+     * @param token the session token the other operations of the account require
+     * @return the result
+     */
+    public static TransactionResult authenticated(int accountNum, long balance, String token) {return new TransactionResult(true, accountNum, balance, "", token);}
+
+    /**
+     * Creates the result of a failed operation.
+     *
+     * @param accountNum the account number (-1 if no account was found)
+     * @param error why the operation failed
+     * @return the result
+     */
+    public static TransactionResult failure(int accountNum, String error) {return new TransactionResult(false, accountNum, 0, error, "");}
+
+    /**
+     * Checks if the operation was made.
+     *
+     * @return true if the operation was made
+     */
+    public boolean success() {return success;}
+
+    /**
+     * Retrieves the account number the operation was made on.
+     *
+     * @return the account number (-1 if no account was found)
+     */
+    public int accountNum() {return accountNum;}
+
+    /**
+     * Retrieves the balance of the account after the operation.
+     *
+     * @return the balance in cents (0 if the operation failed)
+     */
+    public long balance() {return balance;}
+
+    /**
+     * Retrieves why the operation failed.
+     *
+     * @return the reason (empty if the operation succeeded)
+     */
+    public String error() {return error;}
+
+    /**
+     * Retrieves the session token given by a successful authentication.
+     *
+     * @return the token (empty for every other result)
+     */
+    public String token() {return token;}
+
+    @Override
+    public String toString() {return success ? "OK " + accountNum + " " + Money.toString(balance) : "FAILED " + accountNum + " " + error;}
+
+}